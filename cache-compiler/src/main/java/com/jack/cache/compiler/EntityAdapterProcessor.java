@@ -0,0 +1,500 @@
+package com.jack.cache.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * 为@Table实体生成EntityAdapter, 代替运行时反射读写列.
+ * <p>
+ * 字段/getter/setter的查找规则与ColumnUtils一致, 生成类无法访问的列(private且无可见的getter/setter)
+ * 不会生成, 运行时由ColumnEntity继续使用反射.
+ * 以注解全名匹配, 不依赖cache模块.
+ */
+public class EntityAdapterProcessor extends AbstractProcessor {
+
+    private static final String TABLE = "com.jack.cache.annotation.Table";
+    private static final String COLUMN = "com.jack.cache.annotation.Column";
+    private static final String ADAPTER = "com.jack.cache.db.table.EntityAdapter";
+    private static final String SUFFIX = "_EntityAdapter";
+
+    private Elements elements;
+    private Types types;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(TABLE);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) continue;
+                TypeElement entityType = (TypeElement) element;
+                try {
+                    generate(entityType);
+                } catch (IOException ex) {
+                    processingEnv.getMessager().printMessage(
+                            Diagnostic.Kind.ERROR, "can not generate adapter: " + ex.getMessage(), entityType);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement entityType) throws IOException {
+        if (!isSupportedEntity(entityType)) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                    "skip adapter, use reflection: " + entityType.getQualifiedName(), entityType);
+            return;
+        }
+
+        String packageName = elements.getPackageOf(entityType).getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(entityType).toString();
+        String simpleName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+        String adapterName = simpleName.replace('$', '_') + SUFFIX;
+
+        List<ColumnInfo> columns = findColumns(entityType, packageName);
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                packageName.isEmpty() ? adapterName : packageName + "." + adapterName, entityType);
+        Writer writer = file.openWriter();
+        try {
+            writer.write(render(packageName, adapterName, entityType.getQualifiedName().toString(), columns));
+        } finally {
+            writer.close();
+        }
+    }
+
+    private boolean isSupportedEntity(TypeElement entityType) {
+        Set<Modifier> modifiers = entityType.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT) || !entityType.getTypeParameters().isEmpty()) {
+            return false;
+        }
+        Element element = entityType;
+        while (element instanceof TypeElement) {
+            TypeElement type = (TypeElement) element;
+            if (type.getModifiers().contains(Modifier.PRIVATE)) return false;
+            if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+                return false;
+            }
+            if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+                return false;
+            }
+            element = type.getEnclosingElement();
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(entityType.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()) {
+                return !constructor.getModifiers().contains(Modifier.PRIVATE);
+            }
+        }
+        return false;
+    }
+
+    private List<ColumnInfo> findColumns(TypeElement entityType, String packageName) {
+        List<ColumnInfo> result = new ArrayList<ColumnInfo>();
+        Set<String> names = new HashSet<String>();
+        TypeElement type = entityType;
+        while (type != null && !"java.lang.Object".equals(type.getQualifiedName().toString())) {
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) continue;
+                AnnotationMirror column = findAnnotation(field, COLUMN);
+                if (column == null) continue;
+                String name = (String) annotationValue(column, "name", null);
+                if (name == null || !names.add(name)) continue;
+
+                ColumnInfo info = createColumn(entityType, type, field, column, name, packageName);
+                if (info != null) {
+                    result.add(info);
+                }
+            }
+            TypeMirror superType = type.getSuperclass();
+            type = superType.getKind() == TypeKind.DECLARED ? (TypeElement) types.asElement(superType) : null;
+        }
+        return result;
+    }
+
+    private ColumnInfo createColumn(TypeElement entityType, TypeElement declaringType, VariableElement field,
+                                    AnnotationMirror column, String name, String packageName) {
+        TypeMirror fieldType = field.asType();
+        ValueKind kind = ValueKind.of(fieldType, types);
+        if (kind == null) return null;
+
+        ColumnInfo info = new ColumnInfo();
+        info.name = name;
+        info.kind = kind;
+        info.typeName = types.erasure(fieldType).toString();
+        info.isPrimitive = fieldType.getKind().isPrimitive();
+        boolean isId = (Boolean) annotationValue(column, "isId", Boolean.FALSE);
+        boolean autoGen = (Boolean) annotationValue(column, "autoGen", Boolean.TRUE);
+        info.isAutoId = isId && autoGen && kind.isAutoIdType();
+
+        // 父类字段可能被子类同名字段隐藏, 转型到声明类访问
+        String fieldAccess = declaringType.equals(entityType)
+                ? "entity." + field.getSimpleName()
+                : "((" + declaringType.getQualifiedName() + ") entity)." + field.getSimpleName();
+        boolean fieldAccessible = isAccessible(field, declaringType, packageName);
+
+        ExecutableElement getter = findGetMethod(entityType, field);
+        if (getter == null) {
+            if (!fieldAccessible) return null;
+            info.getter = fieldAccess;
+        } else {
+            if (!isAccessible(getter, (TypeElement) getter.getEnclosingElement(), packageName)
+                    || !types.isSameType(getter.getReturnType(), fieldType)) {
+                return null;
+            }
+            info.getter = "entity." + getter.getSimpleName() + "()";
+        }
+
+        ExecutableElement setter = findSetMethod(entityType, field);
+        if (setter == null) {
+            if (!fieldAccessible || field.getModifiers().contains(Modifier.FINAL)) return null;
+            info.setterPrefix = fieldAccess + " = ";
+            info.setterSuffix = "";
+        } else {
+            if (!isAccessible(setter, (TypeElement) setter.getEnclosingElement(), packageName)) {
+                return null;
+            }
+            info.setterPrefix = "entity." + setter.getSimpleName() + "(";
+            info.setterSuffix = ")";
+        }
+        return info;
+    }
+
+    private boolean isAccessible(Element member, TypeElement declaringType, String packageName) {
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) return false;
+        boolean samePackage = elements.getPackageOf(declaringType).getQualifiedName().contentEquals(packageName);
+        if (samePackage) return true;
+        return modifiers.contains(Modifier.PUBLIC) && declaringType.getModifiers().contains(Modifier.PUBLIC);
+    }
+
+    /**
+     * 同ColumnUtils#findGetMethod
+     */
+    private ExecutableElement findGetMethod(TypeElement type, VariableElement field) {
+        String fieldName = field.getSimpleName().toString();
+        boolean isBoolean = ValueKind.of(field.asType(), types) == ValueKind.BOOLEAN;
+        while (type != null && !"java.lang.Object".equals(type.getQualifiedName().toString())) {
+            ExecutableElement method = null;
+            if (isBoolean) {
+                String methodName = fieldName.startsWith("is") ? fieldName : "is" + capitalize(fieldName);
+                method = findMethod(type, methodName, null);
+            }
+            if (method == null) {
+                method = findMethod(type, "get" + capitalize(fieldName), null);
+            }
+            if (method != null) return method;
+            type = superElement(type);
+        }
+        return null;
+    }
+
+    /**
+     * 同ColumnUtils#findSetMethod
+     */
+    private ExecutableElement findSetMethod(TypeElement type, VariableElement field) {
+        String fieldName = field.getSimpleName().toString();
+        TypeMirror fieldType = field.asType();
+        boolean isBoolean = ValueKind.of(fieldType, types) == ValueKind.BOOLEAN;
+        while (type != null && !"java.lang.Object".equals(type.getQualifiedName().toString())) {
+            ExecutableElement method = null;
+            if (isBoolean) {
+                String methodName = fieldName.startsWith("is")
+                        ? "set" + capitalize(fieldName.substring(2)) : "set" + capitalize(fieldName);
+                method = findMethod(type, methodName, fieldType);
+            }
+            if (method == null) {
+                method = findMethod(type, "set" + capitalize(fieldName), fieldType);
+            }
+            if (method != null) return method;
+            type = superElement(type);
+        }
+        return null;
+    }
+
+    private ExecutableElement findMethod(TypeElement type, String name, TypeMirror paramType) {
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (!method.getSimpleName().contentEquals(name)) continue;
+            List<? extends VariableElement> params = method.getParameters();
+            if (paramType == null) {
+                if (params.isEmpty()) return method;
+            } else if (params.size() == 1 && types.isSameType(params.get(0).asType(), paramType)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private TypeElement superElement(TypeElement type) {
+        TypeMirror superType = type.getSuperclass();
+        return superType.getKind() == TypeKind.DECLARED ? (TypeElement) types.asElement(superType) : null;
+    }
+
+    private static String capitalize(String name) {
+        if (name.isEmpty()) return name;
+        return name.substring(0, 1).toUpperCase() + name.substring(1);
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            Element annotationType = mirror.getAnnotationType().asElement();
+            if (((TypeElement) annotationType).getQualifiedName().contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static Object annotationValue(AnnotationMirror mirror, String key, Object defaultValue) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(key)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return defaultValue;
+    }
+
+    private static String render(String packageName, String adapterName, String entityName, List<ColumnInfo> columns) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("// Generated by ").append(EntityAdapterProcessor.class.getName()).append(". Do not edit.\n");
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("public final class ").append(adapterName)
+                .append(" implements ").append(ADAPTER).append("<").append(entityName).append("> {\n\n");
+
+        sb.append("    private static final String[] COLUMN_NAMES = {");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append('"').append(escape(columns.get(i).name)).append('"');
+        }
+        sb.append("};\n\n");
+        sb.append("    private final com.jack.cache.db.converter.ColumnConverter[] converters =\n")
+                .append("            new com.jack.cache.db.converter.ColumnConverter[").append(columns.size()).append("];\n\n");
+
+        sb.append("    public ").append(adapterName).append("() {\n    }\n\n");
+
+        sb.append("    @Override\n    public String[] getColumnNames() {\n        return COLUMN_NAMES.clone();\n    }\n\n");
+
+        sb.append("    @Override\n    public ").append(entityName).append(" newInstance() {\n")
+                .append("        return new ").append(entityName).append("();\n    }\n\n");
+
+        // getValue
+        sb.append("    @Override\n    public Object getValue(").append(entityName).append(" entity, int slot) {\n")
+                .append("        switch (slot) {\n");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append("            case ").append(i).append(":\n                return ")
+                    .append(columns.get(i).getter).append(";\n");
+        }
+        sb.append("            default:\n                throw new IllegalArgumentException(\"slot: \" + slot);\n")
+                .append("        }\n    }\n\n");
+
+        // bindValue
+        sb.append("    @Override\n    @SuppressWarnings(\"unchecked\")\n")
+                .append("    public void bindValue(android.database.sqlite.SQLiteStatement statement, int index, ")
+                .append(entityName).append(" entity, int slot) {\n")
+                .append("        switch (slot) {\n");
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnInfo column = columns.get(i);
+            sb.append("            case ").append(i).append(": {\n");
+            column.kind.renderBind(sb, column, i);
+            sb.append("                break;\n            }\n");
+        }
+        sb.append("            default:\n                throw new IllegalArgumentException(\"slot: \" + slot);\n")
+                .append("        }\n    }\n\n");
+
+        // readValue
+        sb.append("    @Override\n")
+                .append("    public void readValue(").append(entityName)
+                .append(" entity, android.database.Cursor cursor, int index, int slot) {\n")
+                .append("        if (cursor.isNull(index)) return;\n")
+                .append("        switch (slot) {\n");
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnInfo column = columns.get(i);
+            sb.append("            case ").append(i).append(":\n                ")
+                    .append(column.setterPrefix).append(column.kind.renderRead(column, i))
+                    .append(column.setterSuffix).append(";\n                break;\n");
+        }
+        sb.append("            default:\n                throw new IllegalArgumentException(\"slot: \" + slot);\n")
+                .append("        }\n    }\n\n");
+
+        // setAutoId
+        sb.append("    @Override\n    public void setAutoId(").append(entityName).append(" entity, long id) {\n");
+        for (ColumnInfo column : columns) {
+            if (column.isAutoId) {
+                String value = column.kind == ValueKind.INT ? "(int) id" : "id";
+                sb.append("        ").append(column.setterPrefix).append(value).append(column.setterSuffix).append(";\n");
+                break;
+            }
+        }
+        sb.append("    }\n\n");
+
+        sb.append("    private com.jack.cache.db.converter.ColumnConverter converter(int slot, Class<?> type) {\n")
+                .append("        com.jack.cache.db.converter.ColumnConverter converter = converters[slot];\n")
+                .append("        if (converter == null) {\n")
+                .append("            converter = com.jack.cache.db.converter.ColumnConverterFactory.getColumnConverter(type);\n")
+                .append("            converters[slot] = converter;\n")
+                .append("        }\n        return converter;\n    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static final class ColumnInfo {
+        String name;
+        ValueKind kind;
+        String typeName;
+        boolean isAutoId;
+        boolean isPrimitive;
+        String getter;
+        String setterPrefix;
+        String setterSuffix;
+    }
+
+    /**
+     * 列值的读写方式, 与cache内置的ColumnConverter保持一致, 其他类型运行时交给ColumnConverter.
+     */
+    private enum ValueKind {
+        BOOLEAN("cursor.getInt(index) == 1", "bindLong", "v ? 1 : 0"),
+        BYTE("(byte) cursor.getInt(index)", "bindLong", "v"),
+        SHORT("cursor.getShort(index)", "bindLong", "v"),
+        INT("cursor.getInt(index)", "bindLong", "v"),
+        LONG("cursor.getLong(index)", "bindLong", "v"),
+        CHAR("(char) cursor.getInt(index)", "bindLong", "v"),
+        FLOAT("cursor.getFloat(index)", "bindDouble", "v"),
+        DOUBLE("cursor.getDouble(index)", "bindDouble", "v"),
+        STRING("cursor.getString(index)", "bindString", "v"),
+        BLOB("cursor.getBlob(index)", "bindBlob", "v"),
+        DATE("new java.util.Date(cursor.getLong(index))", "bindLong", "v.getTime()"),
+        SQL_DATE("new java.sql.Date(cursor.getLong(index))", "bindLong", "v.getTime()"),
+        CONVERTER(null, null, null);
+
+        final String read;
+        final String bindMethod;
+        final String bindValue;
+
+        ValueKind(String read, String bindMethod, String bindValue) {
+            this.read = read;
+            this.bindMethod = bindMethod;
+            this.bindValue = bindValue;
+        }
+
+        boolean isAutoIdType() {
+            return this == INT || this == LONG;
+        }
+
+        String renderRead(ColumnInfo column, int slot) {
+            if (this == CONVERTER) {
+                return "(" + column.typeName + ") converter(" + slot + ", " + column.typeName
+                        + ".class).getFieldValue(cursor, index)";
+            }
+            return read;
+        }
+
+        void renderBind(StringBuilder sb, ColumnInfo column, int slot) {
+            String indent = "                ";
+            if (this == CONVERTER) {
+                sb.append(indent).append("com.jack.cache.db.converter.ColumnConverter converter = converter(")
+                        .append(slot).append(", ").append(column.typeName).append(".class);\n")
+                        .append(indent).append("com.jack.cache.db.sqlite.SqlInfo.bindValue(statement, index,\n")
+                        .append(indent).append("        converter.fieldValue2DbValue(").append(column.getter)
+                        .append("), converter.getColumnDbType());\n");
+                return;
+            }
+            sb.append(indent).append(column.typeName).append(" v = ").append(column.getter).append(";\n");
+            if (!column.isPrimitive) {
+                sb.append(indent).append("if (v == null) {\n")
+                        .append(indent).append("    statement.bindNull(index);\n")
+                        .append(indent).append("} else {\n")
+                        .append(indent).append("    statement.").append(bindMethod).append("(index, ")
+                        .append(bindValue).append(");\n")
+                        .append(indent).append("}\n");
+            } else {
+                sb.append(indent).append("statement.").append(bindMethod).append("(index, ")
+                        .append(bindValue).append(");\n");
+            }
+        }
+
+        static ValueKind of(TypeMirror type, Types types) {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                    return BOOLEAN;
+                case BYTE:
+                    return BYTE;
+                case SHORT:
+                    return SHORT;
+                case INT:
+                    return INT;
+                case LONG:
+                    return LONG;
+                case CHAR:
+                    return CHAR;
+                case FLOAT:
+                    return FLOAT;
+                case DOUBLE:
+                    return DOUBLE;
+                case ARRAY:
+                    return ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE ? BLOB : null;
+                case DECLARED:
+                    if (!((DeclaredType) type).getTypeArguments().isEmpty()) return null;
+                    String name = ((TypeElement) types.asElement(type)).getQualifiedName().toString();
+                    if ("java.lang.Boolean".equals(name)) return BOOLEAN;
+                    if ("java.lang.Byte".equals(name)) return BYTE;
+                    if ("java.lang.Short".equals(name)) return SHORT;
+                    if ("java.lang.Integer".equals(name)) return INT;
+                    if ("java.lang.Long".equals(name)) return LONG;
+                    if ("java.lang.Character".equals(name)) return CHAR;
+                    if ("java.lang.Float".equals(name)) return FLOAT;
+                    if ("java.lang.Double".equals(name)) return DOUBLE;
+                    if ("java.lang.String".equals(name)) return STRING;
+                    if ("java.util.Date".equals(name)) return DATE;
+                    if ("java.sql.Date".equals(name)) return SQL_DATE;
+                    return CONVERTER;
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+# Consumer ProGuard rules, applied to apps that depend on the cache module.
+
+# Generated <Entity>_EntityAdapter classes are loaded by name; without this
+# rule minified apps silently fall back to reflection.
+-keep class * implements com.jack.cache.db.table.EntityAdapter {
+    public <init>();
+}
@@ -0,0 +1,120 @@
+package com.jack.cache.db.config;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.jack.cache.DbManager;
+import com.jack.cache.annotation.Column;
+import com.jack.cache.annotation.Table;
+import com.jack.cache.db.DbManagerImpl;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 对比默认设置与DbPragmas.forCache()/forSmallWrites()的耗时, 结果输出到logcat(tag: DbPragmasBenchmark).
+ * 在真机上运行: ./gradlew :cache:connectedAndroidTest
+ * <p>
+ * 只检查结果行数, 不断言耗时(与设备和存储有关).
+ */
+@RunWith(AndroidJUnit4.class)
+public class DbPragmasBenchmarkTest {
+
+    private static final String TAG = "DbPragmasBenchmark";
+    private static final int ROWS = 2000;
+    private static final int READS = 2000;
+    private static final int ROUNDS = 3;
+
+    @Test
+    public void compareProfiles() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        DbManagerImpl.setContext(context);
+        File dir = new File(context.getCacheDir(), "pragma_benchmark");
+
+        List<String> names = Arrays.asList("default", "forCache", "forSmallWrites");
+        List<DbPragmas> profiles = Arrays.asList(null, DbPragmas.forCache(), DbPragmas.forSmallWrites());
+        for (int round = 0; round < ROUNDS; round++) { // 第一轮包含预热
+            for (int i = 0; i < profiles.size(); i++) {
+                long[] result = run(dir, names.get(i) + "_" + round, profiles.get(i));
+                Log.i(TAG, "round " + round + " " + names.get(i)
+                        + ": insert " + result[0] + "ms, findById " + result[1] + "ms, scan " + result[2] + "ms");
+            }
+        }
+    }
+
+    /**
+     * @return 逐行插入(每行一个事务), 按id读取, 全表读取的毫秒数
+     */
+    private static long[] run(File dir, String dbName, DbPragmas pragmas) throws Exception {
+        File dbFile = new File(dir, dbName + ".db");
+        deleteDb(dbFile);
+        DbManager db = DbManagerImpl.getInstance(new DbManager.DaoConfig()
+                .setDbDir(dir)
+                .setDbName(dbFile.getName())
+                .setPragmas(pragmas)
+                .setDbOpenListener(new DbManager.DbOpenListener() {
+                    @Override
+                    public void onDbOpened(DbManager db) {
+                        db.getDatabase().enableWriteAheadLogging();
+                    }
+                }));
+        try {
+            String payload = new String(new char[512]).replace('\0', 'x');
+            long start = System.nanoTime();
+            for (int i = 0; i < ROWS; i++) {
+                db.save(new Row(payload + i));
+            }
+            long insertTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                assertNotNull(db.findById(Row.class, (long) (i % ROWS) + 1));
+            }
+            long readTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<Row> rows = db.selector(Row.class).findAll();
+            long scanTime = System.nanoTime() - start;
+            assertEquals(ROWS, rows.size());
+
+            return new long[]{insertTime / 1000000, readTime / 1000000, scanTime / 1000000};
+        } finally {
+            db.close();
+            deleteDb(dbFile);
+        }
+    }
+
+    private static void deleteDb(File dbFile) {
+        String[] suffixes = {"", "-journal", "-wal", "-shm"};
+        for (String suffix : suffixes) {
+            File file = new File(dbFile.getPath() + suffix);
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "delete failed: " + file);
+            }
+        }
+    }
+
+    @Table(name = "benchmark_row")
+    public static final class Row {
+        @Column(name = "id", isId = true)
+        private long id;
+
+        @Column(name = "content")
+        private String content;
+
+        public Row() {
+        }
+
+        Row(String content) {
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.jack.cache.db.selector;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.jack.cache.DbManager;
+import com.jack.cache.annotation.Column;
+import com.jack.cache.annotation.Table;
+import com.jack.cache.db.DbManagerImpl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Keyset分页在排序列取值相同时不跳过也不重复行.
+ */
+@RunWith(AndroidJUnit4.class)
+public class KeysetPageTest {
+
+    private DbManager db;
+
+    @Before
+    public void setUp() throws Exception {
+        DbManagerImpl.setContext(InstrumentationRegistry.getTargetContext());
+        db = DbManagerImpl.getInstance(new DbManager.DaoConfig().setDbName("keyset_page_test.db"));
+        db.dropTable(Item.class);
+        List<Item> items = new ArrayList<Item>();
+        for (int i = 0; i < 40; i++) {
+            // 只有3个group, 4个rank, 大量行在前两列上相同
+            items.add(new Item(i % 3, (i * 7) % 4));
+        }
+        db.save(items);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db.dropTable(Item.class);
+        db.close();
+    }
+
+    @Test
+    public void pagesCoverAllRowsWithMultiColumnOrder() throws Exception {
+        List<Long> expected = ids(db.selector(Item.class)
+                .orderBy("grp").orderBy("rank", true).orderBy("id").findAll());
+        List<Long> actual = readAllPages(db.selector(Item.class)
+                .orderBy("grp").orderBy("rank", true), 7);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void idTieBreakKeepsItsOwnDirection() throws Exception {
+        List<Long> expected = ids(db.selector(Item.class)
+                .orderBy("grp", true).orderBy("id").findAll());
+        List<Long> actual = readAllPages(db.selector(Item.class)
+                .orderBy("grp", true).orderBy("id"), 4);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void findPageDoesNotAdvance() throws Exception {
+        Selector<Item> selector = db.selector(Item.class).orderBy("grp");
+        assertEquals(ids(selector.findPage(5).getItems()), ids(selector.findPage(5).getItems()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void afterRejectsOrderItDoesNotCover() throws Exception {
+        db.selector(Item.class).orderBy("grp").after("rank", 1, 1L);
+    }
+
+    private static List<Long> readAllPages(Selector<Item> selector, int pageSize) throws Exception {
+        List<Long> result = new ArrayList<Long>();
+        Page<Item> page = selector.findPage(pageSize);
+        while (true) {
+            result.addAll(ids(page.getItems()));
+            if (!page.hasMore()) break;
+            page = selector.after(page).findPage(pageSize);
+        }
+        return result;
+    }
+
+    private static List<Long> ids(List<Item> items) {
+        List<Long> result = new ArrayList<Long>(items.size());
+        for (Item item : items) {
+            result.add(item.id);
+        }
+        return result;
+    }
+
+    @Table(name = "keyset_item")
+    public static final class Item {
+        @Column(name = "id", isId = true)
+        private long id;
+
+        @Column(name = "grp")
+        private int grp;
+
+        @Column(name = "rank")
+        private int rank;
+
+        public Item() {
+        }
+
+        Item(int grp, int rank) {
+            this.grp = grp;
+            this.rank = rank;
+        }
+    }
+}
@@ -5,8 +5,10 @@ import android.database.sqlite.SQLiteDatabase;
 import android.text.TextUtils;
 
 import com.jack.cache.data.KeyValue;
+import com.jack.cache.db.config.DbPragmas;
 import com.jack.cache.db.selector.Selector;
 import com.jack.cache.db.sqlite.SqlInfo;
+import com.jack.cache.db.sqlite.StatementCache;
 import com.jack.cache.db.sqlite.WhereBuilder;
 import com.jack.cache.db.table.DbModel;
 import com.jack.cache.db.table.TableEntity;
@@ -16,6 +18,8 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * Created by liuyang on 2017/1/7.
@@ -63,9 +67,55 @@ public interface DbManager extends Closeable {
      */
     void replace(Object entity) throws DbException;
 
+    ///////////// async write
+
+    /**
+     * 异步saveOrUpdate, 与其他异步写操作在一个事务中批量提交, 见DaoConfig#setAsyncWriteDelay.
+     *
+     * @param entity
+     * @return 提交完成(或失败)时完成
+     * @throws DbException 已close()时, 其他异步写操作相同
+     */
+    Future<Void> saveOrUpdateAsync(Object entity) throws DbException;
+
+    /**
+     * 异步replace, 同一行上未提交的replace合并为一个.
+     */
+    Future<Void> replaceAsync(Object entity) throws DbException;
+
+    /**
+     * 异步update, 同一行上未提交的update合并为一个, 更新的列取并集.
+     */
+    Future<Void> updateAsync(Object entity, String... updateColumnNames) throws DbException;
+
+    Future<Void> deleteAsync(Object entity) throws DbException;
+
+    /**
+     * 立即提交已排队的异步写操作
+     *
+     * @return 之前排队的操作全部完成时完成
+     */
+    Future<Void> flushAsyncWrites();
+
+    ///////////// change notification
+
+    /**
+     * 监听各表的写操作, 事务中的写操作在事务提交后通知; 见Selector#observe
+     */
+    void addTableChangeListener(TableChangeListener listener);
+
+    void removeTableChangeListener(TableChangeListener listener);
+
     ///////////// delete
     void deleteById(Class<?> entityType, Object idValue) throws DbException;
 
+    /**
+     * 按id批量删除(如Selector#pluckLongs的结果), 每条语句最多999个id, 在一个事务中执行.
+     *
+     * @return 删除的行数
+     */
+    int deleteByIds(Class<?> entityType, long[] ids) throws DbException;
+
     void delete(Object entity) throws DbException;
 
     void delete(Class<?> entityType) throws DbException;
@@ -88,8 +138,34 @@ public interface DbManager extends Closeable {
 
     DbModel findDbModelFirst(SqlInfo sqlInfo) throws DbException;
 
+    /**
+     * 按id读取实体的延迟加载列(@Column(lazy = true))并赋值.
+     *
+     * @param columnNames 为空时读取所有延迟加载的列
+     */
+    void loadLazyColumns(Object entity, String... columnNames) throws DbException;
+
     List<DbModel> findDbModelAll(SqlInfo sqlInfo) throws DbException;
 
+    /**
+     * 查询第一行第一列, 使用缓存的预编译语句, 不创建cursor.
+     *
+     * @return 没有结果或值为null时返回0
+     */
+    long queryLong(SqlInfo sqlInfo) throws DbException;
+
+    /**
+     * @return 没有结果或值为null时返回0
+     * @see #queryLong(SqlInfo)
+     */
+    double queryDouble(SqlInfo sqlInfo) throws DbException;
+
+    /**
+     * @return 没有结果或值为null时返回null
+     * @see #queryLong(SqlInfo)
+     */
+    String queryString(SqlInfo sqlInfo) throws DbException;
+
     ///////////// table
 
     /**
@@ -137,6 +213,22 @@ public interface DbManager extends Closeable {
      */
     void close() throws IOException;
 
+    ///////////// transaction
+
+    /**
+     * 在一个事务中执行callable, 其中的DbManager操作加入这个事务, 不再各自提交;
+     * 单个操作失败时只撤销它自己已写入的部分(如批量写入的前几段), 再抛出异常.
+     * 嵌套调用时使用保存点(SAVEPOINT), 内层抛出异常只回滚内层的修改.
+     * callable抛出异常时回滚, 异常包装为DbException抛出.
+     */
+    <V> V runInTransaction(Callable<V> callable) throws DbException;
+
+    /**
+     * @param mode 最外层事务的加锁方式, 嵌套调用时忽略
+     * @see #runInTransaction(Callable)
+     */
+    <V> V runInTransaction(TransactionMode mode, Callable<V> callable) throws DbException;
+
     ///////////// custom
     int executeUpdateDelete(SqlInfo sqlInfo) throws DbException;
 
@@ -150,6 +242,25 @@ public interface DbManager extends Closeable {
 
     Cursor execQuery(String sql) throws DbException;
 
+    /**
+     * 事务的加锁方式.
+     * SQLiteDatabase不支持DEFERRED, 只读的一组查询不需要事务.
+     */
+    public enum TransactionMode {
+        /**
+         * WAL模式下BEGIN IMMEDIATE, 否则BEGIN EXCLUSIVE; 同单个操作的事务
+         */
+        DEFAULT,
+        /**
+         * BEGIN IMMEDIATE: 开始时获取写锁, 不阻塞其他连接的读
+         */
+        IMMEDIATE,
+        /**
+         * BEGIN EXCLUSIVE
+         */
+        EXCLUSIVE
+    }
+
     public interface DbOpenListener {
         void onDbOpened(DbManager db);
     }
@@ -158,6 +269,25 @@ public interface DbManager extends Closeable {
         void onUpgrade(DbManager db, int oldVersion, int newVersion);
     }
 
+    public interface MaintenanceListener {
+        /**
+         * 后台维护完成后在维护线程回调
+         *
+         * @param checkpointedFrames WAL checkpoint的帧数
+         * @param reclaimedPages     incremental_vacuum回收的页数
+         */
+        void onMaintained(DbManager db, int checkpointedFrames, int reclaimedPages);
+    }
+
+    public interface TableChangeListener {
+        /**
+         * 写操作提交后在写操作的线程回调, 不要执行耗时操作.
+         *
+         * @param tableName 变化的表名, 执行原始sql时为null(可能是任意表)
+         */
+        void onTableChanged(DbManager db, String tableName);
+    }
+
     public interface TableCreateListener {
         void onTableCreated(DbManager db, TableEntity<?> table);
     }
@@ -167,6 +297,16 @@ public interface DbManager extends Closeable {
         private String dbName = "xUtils.db"; // default db name
         private int dbVersion = 1;
         private boolean allowTransaction = true;
+        private int bulkTransactionSize = 0;
+        private int readPoolSize = 0;
+        private int statementCacheSize = StatementCache.DEFAULT_MAX_SIZE;
+        private long asyncWriteDelay = 200;
+        private int asyncWriteBatchSize = 100;
+        private int entityCacheSize = 0;
+        private DbPragmas pragmas;
+        private long maintenanceInterval = 0;
+        private long maintenanceIdleTime = 5000;
+        private MaintenanceListener maintenanceListener;
         private DbUpgradeListener dbUpgradeListener;
         private TableCreateListener tableCreateListener;
         private DbOpenListener dbOpenListener;
@@ -196,6 +336,123 @@ public interface DbManager extends Closeable {
             return this;
         }
 
+        /**
+         * 批量(List)写入时每个事务最多包含的行数,
+         * 小于等于0时整个List在一个事务中提交.
+         *
+         * @param bulkTransactionSize
+         * @return
+         */
+        public DaoConfig setBulkTransactionSize(int bulkTransactionSize) {
+            this.bulkTransactionSize = bulkTransactionSize;
+            return this;
+        }
+
+        /**
+         * 只读连接数, 数据库开启WAL(在DbOpenListener中)后生效,
+         * 查询轮流使用只读连接, 事务中的查询仍使用写连接.
+         * 小于等于0时不使用只读连接.
+         *
+         * @param readPoolSize
+         * @return
+         */
+        public DaoConfig setReadPoolSize(int readPoolSize) {
+            this.readPoolSize = readPoolSize;
+            return this;
+        }
+
+        /**
+         * 每个表缓存的预编译语句数, 同时作为每个连接的sql编译缓存大小(最大100).
+         *
+         * @param statementCacheSize
+         * @return
+         */
+        public DaoConfig setStatementCacheSize(int statementCacheSize) {
+            if (statementCacheSize > 0) {
+                this.statementCacheSize = statementCacheSize;
+            }
+            return this;
+        }
+
+        /**
+         * 异步写操作排队后最多等待的毫秒数
+         *
+         * @param asyncWriteDelay
+         * @return
+         */
+        public DaoConfig setAsyncWriteDelay(long asyncWriteDelay) {
+            this.asyncWriteDelay = asyncWriteDelay;
+            return this;
+        }
+
+        /**
+         * 排队的异步写操作达到该数量时立即提交
+         *
+         * @param asyncWriteBatchSize
+         * @return
+         */
+        public DaoConfig setAsyncWriteBatchSize(int asyncWriteBatchSize) {
+            if (asyncWriteBatchSize > 0) {
+                this.asyncWriteBatchSize = asyncWriteBatchSize;
+            }
+            return this;
+        }
+
+        /**
+         * 每个表按id缓存的实体数, findById和按id的findFirst优先使用缓存,
+         * 写操作时失效, runInTransaction及异步写入的事务结束后再失效一次. 缓存的实体是共享的同一个对象.
+         * 直接通过getDatabase()开启的事务中写入时, 提交后需要调用getTable(...).invalidateEntityCache().
+         * 小于等于0时不缓存.
+         *
+         * @param entityCacheSize
+         * @return
+         */
+        public DaoConfig setEntityCacheSize(int entityCacheSize) {
+            this.entityCacheSize = entityCacheSize;
+            return this;
+        }
+
+        /**
+         * 打开数据库时应用的PRAGMA设置, 为null时使用默认值.
+         *
+         * @param pragmas
+         * @return
+         */
+        public DaoConfig setPragmas(DbPragmas pragmas) {
+            this.pragmas = pragmas;
+            return this;
+        }
+
+        /**
+         * 后台维护(WAL checkpoint, incremental_vacuum)的最小间隔毫秒数,
+         * 小于等于0时不维护.
+         *
+         * @param maintenanceInterval
+         * @return
+         */
+        public DaoConfig setMaintenanceInterval(long maintenanceInterval) {
+            this.maintenanceInterval = maintenanceInterval;
+            return this;
+        }
+
+        /**
+         * 距上次写操作超过该毫秒数才开始维护
+         *
+         * @param maintenanceIdleTime
+         * @return
+         */
+        public DaoConfig setMaintenanceIdleTime(long maintenanceIdleTime) {
+            if (maintenanceIdleTime >= 0) {
+                this.maintenanceIdleTime = maintenanceIdleTime;
+            }
+            return this;
+        }
+
+        public DaoConfig setMaintenanceListener(MaintenanceListener maintenanceListener) {
+            this.maintenanceListener = maintenanceListener;
+            return this;
+        }
+
         public DaoConfig setDbOpenListener(DbOpenListener dbOpenListener) {
             this.dbOpenListener = dbOpenListener;
             return this;
@@ -227,6 +484,46 @@ public interface DbManager extends Closeable {
             return allowTransaction;
         }
 
+        public int getBulkTransactionSize() {
+            return bulkTransactionSize;
+        }
+
+        public int getReadPoolSize() {
+            return readPoolSize;
+        }
+
+        public DbPragmas getPragmas() {
+            return pragmas;
+        }
+
+        public long getMaintenanceInterval() {
+            return maintenanceInterval;
+        }
+
+        public long getMaintenanceIdleTime() {
+            return maintenanceIdleTime;
+        }
+
+        public MaintenanceListener getMaintenanceListener() {
+            return maintenanceListener;
+        }
+
+        public int getStatementCacheSize() {
+            return statementCacheSize;
+        }
+
+        public long getAsyncWriteDelay() {
+            return asyncWriteDelay;
+        }
+
+        public int getAsyncWriteBatchSize() {
+            return asyncWriteBatchSize;
+        }
+
+        public int getEntityCacheSize() {
+            return entityCacheSize;
+        }
+
         public DbOpenListener getDbOpenListener() {
             return dbOpenListener;
         }
@@ -31,4 +31,10 @@ public @interface Column {
     boolean isId() default false;
 
     boolean autoGen() default true;
+
+    /**
+     * 大字段(如TEXT, BLOB)延迟加载: 默认的查询不包含该列,
+     * 需要时通过DbManager#loadLazyColumns或LazyColumn读取.
+     */
+    boolean lazy() default false;
 }
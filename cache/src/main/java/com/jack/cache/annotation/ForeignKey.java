@@ -0,0 +1,20 @@
+package com.jack.cache.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 多对一(或一对一)关联, 用于关联实体类型的字段(不需要@Column), 不存入数据库.
+ * 通过Selector#with(字段名)在查询时批量读取并赋值.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ForeignKey {
+
+    /**
+     * 本表中保存关联实体id的列名, 该列需要是@Column
+     */
+    String column();
+}
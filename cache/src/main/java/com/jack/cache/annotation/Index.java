@@ -0,0 +1,32 @@
+package com.jack.cache.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 索引, 建表时(或首次写入已存在的表时)以CREATE INDEX IF NOT EXISTS创建.
+ * <p>
+ * 字段上: 该列为索引的第一列, columns为追加的列;
+ * 类上: columns为索引的全部列, 多个索引使用{@link Indexes}.
+ */
+@Target({ElementType.FIELD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Index {
+
+    /**
+     * 索引名, 默认: "index_" + 表名 + "_" + 列名(以"_"连接)
+     */
+    String name() default "";
+
+    String[] columns() default {};
+
+    boolean unique() default false;
+
+    /**
+     * 部分索引的条件(不含WHERE), 需要SQLite 3.8.0(API 21)以上;
+     * 低版本上非unique的索引忽略条件建完整索引, unique的索引不创建.
+     */
+    String where() default "";
+}
@@ -0,0 +1,25 @@
+package com.jack.cache.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 一对多关联, 用于List字段(不需要@Column), 不存入数据库.
+ * 通过Selector#with(字段名)在查询时批量读取并赋值.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OneToMany {
+
+    /**
+     * 关联表中保存本表id的列名
+     */
+    String column();
+
+    /**
+     * 关联的实体类型, 默认为List的泛型参数
+     */
+    Class<?> target() default void.class;
+}
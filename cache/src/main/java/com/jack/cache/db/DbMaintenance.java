@@ -0,0 +1,172 @@
+package com.jack.cache.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.jack.cache.DbManager;
+import com.jack.cache.db.config.DbPragmas;
+import com.jack.executor.utils.IOUtil;
+import com.jack.executor.utils.LogUtil;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据库空闲时的后台维护: WAL checkpoint和incremental_vacuum.
+ * 距上次写操作超过idleTime, 且距上次维护超过interval时执行, 所有库共用一个低优先级线程.
+ * <p>
+ * incremental_vacuum需要auto_vacuum=INCREMENTAL(DbPragmas#setAutoVacuum), 否则只做checkpoint.
+ */
+/* package */ final class DbMaintenance {
+
+    /**
+     * WAL中的帧数超过该值且已全部checkpoint时, 截断WAL文件
+     */
+    private static final int TRUNCATE_WAL_FRAMES = 1000;
+    /**
+     * 空闲页超过该值时才vacuum
+     */
+    private static final int MIN_FREE_PAGES = 64;
+    /**
+     * 每次最多回收的页数, 避免长时间持有写锁
+     */
+    private static final int MAX_VACUUM_PAGES = 1024;
+
+    private static final ScheduledExecutorService EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "db-maintenance");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final DbManager db;
+    private final long interval;
+    private final long idleTime;
+    private final DbManager.MaintenanceListener listener;
+
+    private volatile long lastWriteTime;
+    private long lastRunTime;
+    private boolean autoVacuumWarned = false;
+    private ScheduledFuture<?> future;
+
+    public DbMaintenance(DbManager db, long interval, long idleTime, DbManager.MaintenanceListener listener) {
+        this.db = db;
+        this.interval = interval;
+        this.idleTime = idleTime;
+        this.listener = listener;
+        this.lastWriteTime = System.currentTimeMillis();
+        this.lastRunTime = this.lastWriteTime;
+    }
+
+    public synchronized void start() {
+        if (future == null) {
+            long checkDelay = Math.max(idleTime, 1000);
+            future = EXECUTOR.scheduleWithFixedDelay(checkTask, checkDelay, checkDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void close() {
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+    /**
+     * 每次写操作时调用
+     */
+    public void onWrite() {
+        lastWriteTime = System.currentTimeMillis();
+    }
+
+    private final Runnable checkTask = new Runnable() {
+        @Override
+        public void run() {
+            long now = System.currentTimeMillis();
+            if (now - lastRunTime < interval || now - lastWriteTime < idleTime) return;
+            lastRunTime = now;
+
+            SQLiteDatabase database = db.getDatabase();
+            if (database == null || !database.isOpen()) return;
+            try {
+                int checkpointedFrames = checkpoint(database);
+                int reclaimedPages = incrementalVacuum(database);
+                LogUtil.d("db maintenance " + db.getDaoConfig().getDbName()
+                        + ": checkpointed frames=" + checkpointedFrames + ", reclaimed pages=" + reclaimedPages);
+                if (listener != null) {
+                    listener.onMaintained(db, checkpointedFrames, reclaimedPages);
+                }
+            } catch (Throwable ex) {
+                LogUtil.e(ex.getMessage(), ex);
+            }
+        }
+    };
+
+    /**
+     * @return checkpoint的帧数, 非WAL模式时返回0
+     */
+    private static int checkpoint(SQLiteDatabase database) {
+        // 返回: busy, WAL中的帧数, 已checkpoint的帧数; 非WAL模式时为0, -1, -1
+        long[] result = queryLongs(database, "PRAGMA wal_checkpoint(PASSIVE)", 3);
+        if (result == null || result[1] < 0) return 0;
+        if (result[0] == 0 && result[1] >= TRUNCATE_WAL_FRAMES && result[2] == result[1]) {
+            queryLongs(database, "PRAGMA wal_checkpoint(TRUNCATE)", 3);
+        }
+        return (int) result[2];
+    }
+
+    /**
+     * @return 回收的页数
+     */
+    private int incrementalVacuum(SQLiteDatabase database) {
+        long[] autoVacuum = queryLongs(database, "PRAGMA auto_vacuum", 1);
+        if (autoVacuum == null || autoVacuum[0] != 2) { // 2: INCREMENTAL
+            DbPragmas pragmas = db.getDaoConfig().getPragmas();
+            if (autoVacuum != null && !autoVacuumWarned
+                    && pragmas != null && pragmas.getAutoVacuum() == DbPragmas.AutoVacuum.INCREMENTAL) {
+                // auto_vacuum只应用到新建的库(见DbPragmas#applyOnOpen), 已有的库需要手动VACUUM; 只提示一次
+                autoVacuumWarned = true;
+                LogUtil.w("db maintenance " + db.getDaoConfig().getDbName()
+                        + ": auto_vacuum is INCREMENTAL in DbPragmas but " + autoVacuum[0]
+                        + " in database (created before the setting), incremental_vacuum skipped");
+            }
+            return 0;
+        }
+
+        long[] before = queryLongs(database, "PRAGMA freelist_count", 1);
+        if (before == null || before[0] < MIN_FREE_PAGES) return 0;
+        queryLongs(database, "PRAGMA incremental_vacuum(" + MAX_VACUUM_PAGES + ")", 0);
+        long[] after = queryLongs(database, "PRAGMA freelist_count", 1);
+        return after == null ? 0 : (int) (before[0] - after[0]);
+    }
+
+    /**
+     * 执行PRAGMA并读取第一行的前count列
+     */
+    private static long[] queryLongs(SQLiteDatabase database, String sql, int count) {
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery(sql, null);
+            if (!cursor.moveToFirst()) {
+                return count == 0 ? new long[0] : null;
+            }
+            long[] result = new long[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = cursor.getLong(i);
+            }
+            return result;
+        } catch (Throwable ex) {
+            LogUtil.e(sql + " failed: " + ex.getMessage(), ex);
+            return null;
+        } finally {
+            IOUtil.closeQuietly(cursor);
+        }
+    }
+}
@@ -17,15 +17,22 @@ package com.jack.cache.db;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteQuery;
 import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 
 import com.jack.cache.DbManager;
 import com.jack.cache.data.KeyValue;
+import com.jack.cache.db.config.DbPragmas;
+import com.jack.cache.db.selector.RowVisitor;
 import com.jack.cache.db.selector.Selector;
 import com.jack.cache.db.sqlite.SqlInfo;
 import com.jack.cache.db.sqlite.SqlInfoBuilder;
+import com.jack.cache.db.sqlite.StatementCache;
 import com.jack.cache.db.sqlite.WhereBuilder;
 import com.jack.cache.db.table.ColumnEntity;
 import com.jack.cache.db.table.DbBase;
@@ -41,8 +48,14 @@ import com.jack.executor.utils.LogUtil;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class DbManagerImpl extends DbBase {
 
@@ -64,8 +77,40 @@ public final class DbManagerImpl extends DbBase {
     private final static HashMap<DbManager.DaoConfig, DbManagerImpl> DAO_MAP = new HashMap<DbManager.DaoConfig, DbManagerImpl>();
 
     private SQLiteDatabase database;
+    private ReadConnectionPool readPool;
+    private final HashMap<SQLiteDatabase, StatementCache> queryStatementCaches = new HashMap<SQLiteDatabase, StatementCache>();
+    private WriteQueue writeQueue;
+    /**
+     * close()后为true, 异步写操作抛出DbException; 由this保护
+     */
+    private boolean closed = false;
+    private DbMaintenance maintenance;
+    private final CopyOnWriteArrayList<TableChangeListener> tableChangeListeners = new CopyOnWriteArrayList<TableChangeListener>();
+    /**
+     * 当前线程事务中变化的表, 提交后通知; null元素表示未知的表
+     */
+    private final ThreadLocal<HashSet<String>> pendingTableChanges = new ThreadLocal<HashSet<String>>() {
+        @Override
+        protected HashSet<String> initialValue() {
+            return new HashSet<String>();
+        }
+    };
     private DbManager.DaoConfig daoConfig;
     private boolean allowTransaction;
+    /**
+     * 当前线程加入外层事务的操作, 每层一个savepoint, 见beginTransaction()
+     */
+    private final ThreadLocal<ArrayList<JoinedTransaction>> joinedTransactions = new ThreadLocal<ArrayList<JoinedTransaction>>() {
+        @Override
+        protected ArrayList<JoinedTransaction> initialValue() {
+            return new ArrayList<JoinedTransaction>(2);
+        }
+    };
+    private final AtomicInteger savepointSequence = new AtomicInteger();
+    /**
+     * SQLite 3.24开始支持INSERT ... ON CONFLICT DO UPDATE
+     */
+    private boolean upsertSupported;
 
     private TaskManager taskManager;
 
@@ -76,13 +121,44 @@ public final class DbManagerImpl extends DbBase {
         this.daoConfig = config;
         this.allowTransaction = config.isAllowTransaction();
         this.database = openOrCreateDatabase(config);
+        ReadConnectionPool.setMaxSqlCacheSize(database, config.getStatementCacheSize());
         DbManager.DbOpenListener dbOpenListener = config.getDbOpenListener();
         if (dbOpenListener != null) {
             dbOpenListener.onDbOpened(this);
         }
+        // 需在DbOpenListener开启WAL之后
+        DbPragmas pragmas = config.getPragmas();
+        if (pragmas != null) {
+            pragmas.applyToWriter(database);
+        }
+        if (pragmas != null && pragmas.isExclusiveLocking()) {
+            LogUtil.d("exclusive locking mode, read pool disabled: " + config.getDbName());
+        } else {
+            this.readPool = ReadConnectionPool.open(database, config.getReadPoolSize(), config.getStatementCacheSize(), pragmas);
+        }
+        loadSchema();
+        this.upsertSupported = isSqliteVersionAtLeast(3, 24);
+        if (config.getMaintenanceInterval() > 0) {
+            this.maintenance = new DbMaintenance(this, config.getMaintenanceInterval(),
+                    config.getMaintenanceIdleTime(), config.getMaintenanceListener());
+            this.maintenance.start();
+        }
         taskManager = TaskManagerImpl.getInstance();
     }
 
+    private boolean isSqliteVersionAtLeast(int major, int minor) {
+        try {
+            String version = queryString(new SqlInfo("SELECT sqlite_version()"));
+            String[] parts = version.split("\\.");
+            int versionMajor = Integer.parseInt(parts[0]);
+            int versionMinor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return versionMajor > major || (versionMajor == major && versionMinor >= minor);
+        } catch (Throwable ex) {
+            LogUtil.e(ex.getMessage(), ex);
+            return false;
+        }
+    }
+
     public synchronized static DbManager getInstance(DaoConfig daoConfig) {
 
         if (daoConfig == null) {//使用默认配置
@@ -139,108 +215,193 @@ public final class DbManagerImpl extends DbBase {
 
     @Override
     public void saveOrUpdate(Object entity) throws DbException {
+        if (entity instanceof List) {
+            List<?> entities = (List<?>) entity;
+            if (entities.isEmpty()) return;
+            final TableEntity<?> table = this.getTable(entities.get(0).getClass());
+            createTableIfNotExist(table);
+            try {
+                execBulk(entities, 1, new BulkExecutor() {
+                    @Override
+                    public void exec(List<?> entities, int start, int end) throws DbException {
+                        for (int i = start; i < end; i++) {
+                            saveOrUpdateWithoutTransaction(table, entities.get(i));
+                            table.takeSnapshot(entities.get(i));
+                        }
+                    }
+                });
+            } finally {
+                table.invalidateEntityCache();
+                notifyTableChanged(table.getName());
+            }
+            return;
+        }
+
+        TableEntity<?> table = this.getTable(entity.getClass());
         try {
             beginTransaction();
 
-            if (entity instanceof List) {
-                List<?> entities = (List<?>) entity;
-                if (entities.isEmpty()) return;
-                TableEntity<?> table = this.getTable(entities.get(0).getClass());
-                createTableIfNotExist(table);
-                for (Object item : entities) {
-                    saveOrUpdateWithoutTransaction(table, item);
-                }
-            } else {
-                TableEntity<?> table = this.getTable(entity.getClass());
-                createTableIfNotExist(table);
-                saveOrUpdateWithoutTransaction(table, entity);
-            }
+            createTableIfNotExist(table);
+            saveOrUpdateWithoutTransaction(table, entity);
+            table.takeSnapshot(entity);
 
             setTransactionSuccessful();
         } finally {
             endTransaction();
+            table.invalidateEntity(table.getId().getFieldValue(entity));
+            notifyTableChanged(table.getName());
         }
     }
 
     @Override
     public void replace(Object entity) throws DbException {
+        if (entity instanceof List) {
+            List<?> entities = (List<?>) entity;
+            if (entities.isEmpty()) return;
+            TableEntity<?> table = this.getTable(entities.get(0).getClass());
+            createTableIfNotExist(table);
+            try {
+                bulkInsert(table, entities, true);
+            } finally {
+                table.invalidateEntityCache();
+                notifyTableChanged(table.getName());
+            }
+            return;
+        }
+
+        TableEntity<?> table = this.getTable(entity.getClass());
         try {
             beginTransaction();
 
-            if (entity instanceof List) {
-                List<?> entities = (List<?>) entity;
-                if (entities.isEmpty()) return;
-                TableEntity<?> table = this.getTable(entities.get(0).getClass());
-                createTableIfNotExist(table);
-                for (Object item : entities) {
-                    execNonQuery(SqlInfoBuilder.buildReplaceSqlInfo(table, item));
-                }
-            } else {
-                TableEntity<?> table = this.getTable(entity.getClass());
-                createTableIfNotExist(table);
-                execNonQuery(SqlInfoBuilder.buildReplaceSqlInfo(table, entity));
-            }
+            createTableIfNotExist(table);
+            execNonQuery(table, SqlInfoBuilder.buildReplaceSqlInfo(table, entity));
+            table.takeSnapshot(entity);
 
             setTransactionSuccessful();
         } finally {
             endTransaction();
+            // replace会删除唯一索引冲突的其他行
+            table.invalidateEntityCache();
+            notifyTableChanged(table.getName());
         }
     }
 
     @Override
     public void save(Object entity) throws DbException {
+        if (entity instanceof List) {
+            List<?> entities = (List<?>) entity;
+            if (entities.isEmpty()) return;
+            TableEntity<?> table = this.getTable(entities.get(0).getClass());
+            createTableIfNotExist(table);
+            try {
+                bulkInsert(table, entities, false);
+            } finally {
+                notifyTableChanged(table.getName());
+            }
+            return;
+        }
+
+        TableEntity<?> table = this.getTable(entity.getClass());
         try {
             beginTransaction();
 
-            if (entity instanceof List) {
-                List<?> entities = (List<?>) entity;
-                if (entities.isEmpty()) return;
-                TableEntity<?> table = this.getTable(entities.get(0).getClass());
-                createTableIfNotExist(table);
-                for (Object item : entities) {
-                    execNonQuery(SqlInfoBuilder.buildInsertSqlInfo(table, item));
-                }
-            } else {
-                TableEntity<?> table = this.getTable(entity.getClass());
-                createTableIfNotExist(table);
-                execNonQuery(SqlInfoBuilder.buildInsertSqlInfo(table, entity));
-            }
+            createTableIfNotExist(table);
+            execNonQuery(table, SqlInfoBuilder.buildInsertSqlInfo(table, entity));
+            table.takeSnapshot(entity);
 
             setTransactionSuccessful();
         } finally {
             endTransaction();
+            notifyTableChanged(table.getName());
         }
     }
 
     @Override
     public boolean saveBindingId(Object entity) throws DbException {
+        if (entity instanceof List) {
+            List<?> entities = (List<?>) entity;
+            if (entities.isEmpty()) return false;
+            final TableEntity<?> table = this.getTable(entities.get(0).getClass());
+            createTableIfNotExist(table);
+            try {
+                execBulk(entities, 1, new BulkExecutor() {
+                    @Override
+                    public void exec(List<?> entities, int start, int end) throws DbException {
+                        for (int i = start; i < end; i++) {
+                            if (!saveBindingIdWithoutTransaction(table, entities.get(i))) {
+                                throw new DbException("saveBindingId error, transaction will not commit!");
+                            }
+                            table.takeSnapshot(entities.get(i));
+                        }
+                    }
+                });
+            } finally {
+                notifyTableChanged(table.getName());
+            }
+            return false;
+        }
+
         boolean result = false;
+        TableEntity<?> table = this.getTable(entity.getClass());
         try {
             beginTransaction();
 
-            if (entity instanceof List) {
-                List<?> entities = (List<?>) entity;
-                if (entities.isEmpty()) return false;
-                TableEntity<?> table = this.getTable(entities.get(0).getClass());
-                createTableIfNotExist(table);
-                for (Object item : entities) {
-                    if (!saveBindingIdWithoutTransaction(table, item)) {
-                        throw new DbException("saveBindingId error, transaction will not commit!");
-                    }
-                }
-            } else {
-                TableEntity<?> table = this.getTable(entity.getClass());
-                createTableIfNotExist(table);
-                result = saveBindingIdWithoutTransaction(table, entity);
-            }
+            createTableIfNotExist(table);
+            result = saveBindingIdWithoutTransaction(table, entity);
+            table.takeSnapshot(entity);
 
             setTransactionSuccessful();
         } finally {
             endTransaction();
+            notifyTableChanged(table.getName());
         }
         return result;
     }
 
+    //******************************************** async write ******************************************************
+
+    private synchronized WriteQueue getWriteQueue() throws DbException {
+        if (closed) {
+            throw new DbException("database closed: " + daoConfig.getDbName());
+        }
+        if (writeQueue == null) {
+            writeQueue = new WriteQueue(this, daoConfig.getAsyncWriteDelay(), daoConfig.getAsyncWriteBatchSize());
+        }
+        return writeQueue;
+    }
+
+    @Override
+    public Future<Void> saveOrUpdateAsync(Object entity) throws DbException {
+        return getWriteQueue().saveOrUpdate(entity);
+    }
+
+    @Override
+    public Future<Void> replaceAsync(Object entity) throws DbException {
+        return getWriteQueue().replace(entity);
+    }
+
+    @Override
+    public Future<Void> updateAsync(Object entity, String... updateColumnNames) throws DbException {
+        return getWriteQueue().update(entity, updateColumnNames);
+    }
+
+    @Override
+    public Future<Void> deleteAsync(Object entity) throws DbException {
+        return getWriteQueue().delete(entity);
+    }
+
+    @Override
+    public Future<Void> flushAsyncWrites() {
+        WriteQueue queue;
+        synchronized (this) {
+            queue = writeQueue;
+        }
+        if (queue == null) { // 没有用过异步写或已关闭
+            return WriteQueue.completedFuture();
+        }
+        return queue.flush();
+    }
+
     @Override
     public void deleteById(Class<?> entityType, Object idValue) throws DbException {
         TableEntity<?> table = this.getTable(entityType);
@@ -248,36 +409,82 @@ public final class DbManagerImpl extends DbBase {
         try {
             beginTransaction();
 
-            execNonQuery(SqlInfoBuilder.buildDeleteSqlInfoById(table, idValue));
+            execNonQuery(table, SqlInfoBuilder.buildDeleteSqlInfoById(table, idValue));
 
             setTransactionSuccessful();
         } finally {
             endTransaction();
+            table.invalidateEntity(idValue);
+            notifyTableChanged(table.getName());
         }
     }
 
     @Override
-    public void delete(Object entity) throws DbException {
+    public int deleteByIds(Class<?> entityType, long[] ids) throws DbException {
+        if (ids == null || ids.length == 0) return 0;
+        TableEntity<?> table = this.getTable(entityType);
+        if (!table.tableIsExist()) return 0;
+        int result = 0;
+        StatementCache statementCache = table.getStatementCache();
         try {
             beginTransaction();
 
-            if (entity instanceof List) {
-                List<?> entities = (List<?>) entity;
-                if (entities.isEmpty()) return;
-                TableEntity<?> table = this.getTable(entities.get(0).getClass());
-                if (!table.tableIsExist()) return;
-                for (Object item : entities) {
-                    execNonQuery(SqlInfoBuilder.buildDeleteSqlInfo(table, item));
+            for (int start = 0; start < ids.length; start += MAX_BIND_ARGS) {
+                int end = Math.min(ids.length, start + MAX_BIND_ARGS);
+                String sql = SqlInfoBuilder.buildBulkDeleteSql(table, end - start);
+                SQLiteStatement statement = null;
+                try {
+                    statement = statementCache.acquire(sql);
+                    for (int i = start; i < end; i++) {
+                        statement.bindLong(i - start + 1, ids[i]);
+                    }
+                    result += statement.executeUpdateDelete();
+                } catch (Throwable e) {
+                    throw new DbException(e);
+                } finally {
+                    if (statement != null) {
+                        statementCache.release(sql, statement);
+                    }
                 }
-            } else {
-                TableEntity<?> table = this.getTable(entity.getClass());
-                if (!table.tableIsExist()) return;
-                execNonQuery(SqlInfoBuilder.buildDeleteSqlInfo(table, entity));
             }
 
             setTransactionSuccessful();
         } finally {
             endTransaction();
+            table.invalidateEntityCache();
+            notifyTableChanged(table.getName());
+        }
+        return result;
+    }
+
+    @Override
+    public void delete(Object entity) throws DbException {
+        if (entity instanceof List) {
+            List<?> entities = (List<?>) entity;
+            if (entities.isEmpty()) return;
+            TableEntity<?> table = this.getTable(entities.get(0).getClass());
+            if (!table.tableIsExist()) return;
+            try {
+                bulkDelete(table, entities);
+            } finally {
+                table.invalidateEntityCache();
+                notifyTableChanged(table.getName());
+            }
+            return;
+        }
+
+        TableEntity<?> table = this.getTable(entity.getClass());
+        if (!table.tableIsExist()) return;
+        try {
+            beginTransaction();
+
+            execNonQuery(table, SqlInfoBuilder.buildDeleteSqlInfo(table, entity));
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+            table.invalidateEntity(table.getId().getFieldValue(entity));
+            notifyTableChanged(table.getName());
         }
     }
 
@@ -294,37 +501,54 @@ public final class DbManagerImpl extends DbBase {
         try {
             beginTransaction();
 
-            result = executeUpdateDelete(SqlInfoBuilder.buildDeleteSqlInfo(table, whereBuilder));
+            result = execUpdateDelete(SqlInfoBuilder.buildDeleteSqlInfo(table, whereBuilder));
 
             setTransactionSuccessful();
         } finally {
             endTransaction();
+            table.invalidateEntityCache();
+            notifyTableChanged(table.getName());
         }
         return result;
     }
 
     @Override
     public void update(Object entity, String... updateColumnNames) throws DbException {
+        if (entity instanceof List) {
+            List<?> entities = (List<?>) entity;
+            if (entities.isEmpty()) return;
+            TableEntity<?> table = this.getTable(entities.get(0).getClass());
+            if (!table.tableIsExist()) return;
+            try {
+                bulkUpdate(table, entities, updateColumnNames);
+            } finally {
+                table.invalidateEntityCache();
+                notifyTableChanged(table.getName());
+            }
+            return;
+        }
+
+        TableEntity<?> table = this.getTable(entity.getClass());
+        if (!table.tableIsExist()) return;
+        boolean allColumns = updateColumnNames == null || updateColumnNames.length == 0;
+        // TrackedEntity只写入修改过的列
+        ColumnEntity[] changedColumns = allColumns ? table.getChangedColumns(entity) : null;
+        if (changedColumns != null && changedColumns.length == 0) return;
         try {
             beginTransaction();
 
-            if (entity instanceof List) {
-                List<?> entities = (List<?>) entity;
-                if (entities.isEmpty()) return;
-                TableEntity<?> table = this.getTable(entities.get(0).getClass());
-                if (!table.tableIsExist()) return;
-                for (Object item : entities) {
-                    execNonQuery(SqlInfoBuilder.buildUpdateSqlInfo(table, item, updateColumnNames));
-                }
+            if (changedColumns != null) {
+                execUpdateColumns(table, entity, changedColumns);
             } else {
-                TableEntity<?> table = this.getTable(entity.getClass());
-                if (!table.tableIsExist()) return;
-                execNonQuery(SqlInfoBuilder.buildUpdateSqlInfo(table, entity, updateColumnNames));
+                execNonQuery(table, SqlInfoBuilder.buildUpdateSqlInfo(table, entity, updateColumnNames));
             }
+            updateSnapshot(table, entity, updateColumnNames);
 
             setTransactionSuccessful();
         } finally {
             endTransaction();
+            table.invalidateEntity(table.getId().getFieldValue(entity));
+            notifyTableChanged(table.getName());
         }
     }
 
@@ -337,11 +561,13 @@ public final class DbManagerImpl extends DbBase {
         try {
             beginTransaction();
 
-            result = executeUpdateDelete(SqlInfoBuilder.buildUpdateSqlInfo(table, whereBuilder, nameValuePairs));
+            result = execUpdateDelete(SqlInfoBuilder.buildUpdateSqlInfo(table, whereBuilder, nameValuePairs));
 
             setTransactionSuccessful();
         } finally {
             endTransaction();
+            table.invalidateEntityCache();
+            notifyTableChanged(table.getName());
         }
 
         return result;
@@ -353,14 +579,22 @@ public final class DbManagerImpl extends DbBase {
         TableEntity<T> table = this.getTable(entityType);
         if (!table.tableIsExist()) return null;
 
+        T cached = table.getCachedEntity(idValue);
+        if (cached != null) {
+            return cached;
+        }
+        long cacheVersion = table.getEntityCacheVersion();
+
         Selector selector = Selector.from(table).where(table.getId().getName(), "=", idValue);
 
-        String sql = selector.limit(1).toString();
-        Cursor cursor = execQuery(sql);
+        SqlInfo sqlInfo = selector.limit(1).toSqlInfo();
+        Cursor cursor = execQuery(sqlInfo);
         if (cursor != null) {
             try {
                 if (cursor.moveToNext()) {
-                    return CursorUtils.getEntity(table, cursor);
+                    T entity = CursorUtils.getEntity(table, cursor);
+                    table.putCachedEntity(idValue, entity, cacheVersion);
+                    return entity;
                 }
             } catch (Throwable e) {
                 throw new DbException(e);
@@ -386,6 +620,43 @@ public final class DbManagerImpl extends DbBase {
         return Selector.from(this.getTable(entityType));
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public void loadLazyColumns(Object entity, String... columnNames) throws DbException {
+        TableEntity<Object> table = (TableEntity<Object>) this.getTable(entity.getClass());
+        if (!table.tableIsExist()) return;
+
+        List<String> columnList = new ArrayList<String>();
+        if (columnNames == null || columnNames.length == 0) {
+            for (ColumnEntity column : table.getColumnMap().values()) {
+                if (column.isLazy()) {
+                    columnList.add(column.getName());
+                }
+            }
+        } else {
+            Collections.addAll(columnList, columnNames);
+        }
+        if (columnList.isEmpty()) return;
+
+        ColumnEntity id = table.getId();
+        Object idValue = id.getColumnValue(entity);
+        if (idValue == null) {
+            throw new DbException("this entity[" + table.getEntityType() + "]'s id value is null");
+        }
+
+        // 读入已有的实体
+        Selector.from(table)
+                .project(columnList.toArray(new String[columnList.size()]))
+                .where(id.getName(), "=", idValue)
+                .limit(1)
+                .forEach(new RowVisitor<Object>() {
+                    @Override
+                    public boolean visit(Object row) {
+                        return false;
+                    }
+                }, entity);
+    }
+
     @Override
     public DbModel findDbModelFirst(SqlInfo sqlInfo) throws DbException {
         Cursor cursor = execQuery(sqlInfo);
@@ -410,8 +681,9 @@ public final class DbManagerImpl extends DbBase {
         Cursor cursor = execQuery(sqlInfo);
         if (cursor != null) {
             try {
+                DbModel.Columns columns = CursorUtils.getDbModelColumns(cursor);
                 while (cursor.moveToNext()) {
-                    dbModelList.add(CursorUtils.getDbModel(cursor));
+                    dbModelList.add(CursorUtils.getDbModel(cursor, columns));
                 }
             } catch (Throwable e) {
                 throw new DbException(e);
@@ -422,6 +694,85 @@ public final class DbManagerImpl extends DbBase {
         return dbModelList;
     }
 
+    @Override
+    public long queryLong(SqlInfo sqlInfo) throws DbException {
+        SQLiteDatabase readDatabase = getReadDatabase();
+        StatementCache statementCache = getQueryStatementCache(readDatabase);
+        String sql = sqlInfo.getSql();
+        SQLiteStatement statement = null;
+        try {
+            statement = statementCache.acquire(sql);
+            sqlInfo.bindArgs(statement);
+            return statement.simpleQueryForLong();
+        } catch (SQLiteDoneException ignored) { // 没有结果
+            return 0;
+        } catch (Throwable e) {
+            throw new DbException(e);
+        } finally {
+            if (statement != null) {
+                statementCache.release(sql, statement);
+            }
+        }
+    }
+
+    @Override
+    public double queryDouble(SqlInfo sqlInfo) throws DbException {
+        // SQLiteStatement没有simpleQueryForDouble
+        String value = queryString(sqlInfo);
+        if (value == null) return 0;
+        try {
+            return Double.parseDouble(value);
+        } catch (Throwable e) {
+            throw new DbException(e);
+        }
+    }
+
+    @Override
+    public String queryString(SqlInfo sqlInfo) throws DbException {
+        SQLiteDatabase readDatabase = getReadDatabase();
+        StatementCache statementCache = getQueryStatementCache(readDatabase);
+        String sql = sqlInfo.getSql();
+        SQLiteStatement statement = null;
+        try {
+            statement = statementCache.acquire(sql);
+            sqlInfo.bindArgs(statement);
+            return statement.simpleQueryForString();
+        } catch (SQLiteDoneException ignored) { // 没有结果
+            return null;
+        } catch (Throwable e) {
+            throw new DbException(e);
+        } finally {
+            if (statement != null) {
+                statementCache.release(sql, statement);
+            }
+        }
+    }
+
+    /**
+     * 查询语句的预编译缓存, 每个连接一个
+     */
+    private StatementCache getQueryStatementCache(SQLiteDatabase connection) {
+        synchronized (queryStatementCaches) {
+            StatementCache statementCache = queryStatementCaches.get(connection);
+            if (statementCache == null) {
+                statementCache = new StatementCache(connection, daoConfig.getStatementCacheSize());
+                queryStatementCaches.put(connection, statementCache);
+            }
+            return statementCache;
+        }
+    }
+
+    @Override
+    protected void releaseTableStatements() {
+        super.releaseTableStatements();
+        synchronized (queryStatementCaches) {
+            for (StatementCache statementCache : queryStatementCaches.values()) {
+                statementCache.clear();
+            }
+            queryStatementCaches.clear();
+        }
+    }
+
     //******************************************** config ******************************************************
 
     private SQLiteDatabase openOrCreateDatabase(DbManager.DaoConfig config) {
@@ -434,6 +785,10 @@ public final class DbManagerImpl extends DbBase {
         } else {
             result = mContext.openOrCreateDatabase(config.getDbName(), 0, null);
         }
+        DbPragmas pragmas = config.getPragmas();
+        if (pragmas != null) {
+            pragmas.applyOnOpen(result);
+        }
         return result;
     }
 
@@ -442,78 +797,520 @@ public final class DbManagerImpl extends DbBase {
         ColumnEntity id = table.getId();
         if (id.isAutoId()) {
             if (id.getColumnValue(entity) != null) {
-                execNonQuery(SqlInfoBuilder.buildUpdateSqlInfo(table, entity));
+                execNonQuery(table, SqlInfoBuilder.buildUpdateSqlInfo(table, entity));
             } else {
                 saveBindingIdWithoutTransaction(table, entity);
             }
         } else {
-            execNonQuery(SqlInfoBuilder.buildReplaceSqlInfo(table, entity));
+            SqlInfo upsertSqlInfo = upsertSupported ? SqlInfoBuilder.buildUpsertSqlInfo(table, entity) : null;
+            if (upsertSqlInfo != null) {
+                execNonQuery(table, upsertSqlInfo);
+            } else {
+                execNonQuery(table, SqlInfoBuilder.buildReplaceSqlInfo(table, entity));
+            }
         }
     }
 
     private boolean saveBindingIdWithoutTransaction(TableEntity<?> table, Object entity) throws DbException {
         ColumnEntity id = table.getId();
         if (id.isAutoId()) {
-            execNonQuery(SqlInfoBuilder.buildInsertSqlInfo(table, entity));
-            long idValue = getLastAutoIncrementId(table.getName());
+            // 自增id即rowid, 直接使用executeInsert的返回值
+            long idValue = execInsert(table, SqlInfoBuilder.buildInsertSqlInfo(table, entity));
             if (idValue == -1) {
                 return false;
             }
             id.setAutoIdValue(entity, idValue);
             return true;
         } else {
-            execNonQuery(SqlInfoBuilder.buildInsertSqlInfo(table, entity));
+            execNonQuery(table, SqlInfoBuilder.buildInsertSqlInfo(table, entity));
             return true;
         }
     }
 
-    //************************************************ tools ***********************************
+    //************************************************ bulk ************************************
 
-    private long getLastAutoIncrementId(String tableName) throws DbException {
-        long id = -1;
-        Cursor cursor = execQuery("SELECT seq FROM sqlite_sequence WHERE name='" + tableName + "' LIMIT 1");
-        if (cursor != null) {
+    /**
+     * SQLite默认的最大参数个数(SQLITE_MAX_VARIABLE_NUMBER)
+     */
+    private static final int MAX_BIND_ARGS = 999;
+    /**
+     * 旧版本SQLite中多行VALUES按复合SELECT处理, 受SQLITE_MAX_COMPOUND_SELECT限制
+     */
+    private static final int MAX_VALUES_ROWS = 500;
+
+    private interface BulkExecutor {
+        void exec(List<?> entities, int start, int end) throws DbException;
+    }
+
+    /**
+     * 按DaoConfig#getBulkTransactionSize()分段提交事务, 每段内按rowsPerExec分批执行.
+     */
+    private void execBulk(List<?> entities, int rowsPerExec, BulkExecutor executor) throws DbException {
+        int size = entities.size();
+        int transactionSize = daoConfig.getBulkTransactionSize();
+        if (transactionSize <= 0) {
+            transactionSize = size;
+        }
+
+        for (int txStart = 0; txStart < size; txStart += transactionSize) {
+            int txEnd = Math.min(size, txStart + transactionSize);
             try {
-                if (cursor.moveToNext()) {
-                    id = cursor.getLong(0);
+                beginTransaction();
+
+                for (int start = txStart; start < txEnd; start += rowsPerExec) {
+                    executor.exec(entities, start, Math.min(txEnd, start + rowsPerExec));
                 }
-            } catch (Throwable e) {
-                throw new DbException(e);
+
+                setTransactionSuccessful();
             } finally {
-                IOUtil.closeQuietly(cursor);
+                endTransaction();
+            }
+        }
+    }
+
+    private void bulkInsert(final TableEntity<?> table, List<?> entities, final boolean replace) throws DbException {
+        final ColumnEntity[] columns = table.getInsertColumns();
+        if (columns.length == 0) return;
+
+        int rowsPerExec = 1;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) { // 多行VALUES需要SQLite 3.7.11
+            rowsPerExec = Math.max(1, Math.min(MAX_VALUES_ROWS, MAX_BIND_ARGS / columns.length));
+        }
+
+        execBulk(entities, rowsPerExec, new BulkExecutor() {
+            @Override
+            public void exec(List<?> entities, int start, int end) throws DbException {
+                String sql = SqlInfoBuilder.buildBulkInsertSql(table, columns, end - start, replace);
+                StatementCache statementCache = table.getStatementCache();
+                SQLiteStatement statement = null;
+                try {
+                    statement = statementCache.acquire(sql);
+                    int index = 1;
+                    for (int i = start; i < end; i++) {
+                        Object entity = entities.get(i);
+                        for (ColumnEntity column : columns) {
+                            column.bindValue(statement, index++, entity);
+                        }
+                    }
+                    statement.execute();
+                    for (int i = start; i < end; i++) {
+                        table.takeSnapshot(entities.get(i));
+                    }
+                } catch (Throwable e) {
+                    throw new DbException(e);
+                } finally {
+                    if (statement != null) {
+                        statementCache.release(sql, statement);
+                    }
+                }
+            }
+        });
+    }
+
+    private void bulkDelete(final TableEntity<?> table, List<?> entities) throws DbException {
+        final ColumnEntity id = table.getId();
+        execBulk(entities, MAX_BIND_ARGS, new BulkExecutor() {
+            @Override
+            public void exec(List<?> entities, int start, int end) throws DbException {
+                String sql = SqlInfoBuilder.buildBulkDeleteSql(table, end - start);
+                StatementCache statementCache = table.getStatementCache();
+                SQLiteStatement statement = null;
+                try {
+                    statement = statementCache.acquire(sql);
+                    int index = 1;
+                    for (int i = start; i < end; i++) {
+                        Object entity = entities.get(i);
+                        if (id.getColumnValue(entity) == null) {
+                            throw new DbException("this entity[" + table.getEntityType() + "]'s id value is null");
+                        }
+                        id.bindValue(statement, index++, entity);
+                    }
+                    statement.execute();
+                } catch (DbException e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new DbException(e);
+                } finally {
+                    if (statement != null) {
+                        statementCache.release(sql, statement);
+                    }
+                }
+            }
+        });
+    }
+
+    private void bulkUpdate(final TableEntity<?> table, List<?> entities, String... updateColumnNames) throws DbException {
+        HashSet<String> updateColumnNameSet = null;
+        if (updateColumnNames != null && updateColumnNames.length > 0) {
+            updateColumnNameSet = new HashSet<String>(updateColumnNames.length);
+            Collections.addAll(updateColumnNameSet, updateColumnNames);
+        }
+        List<ColumnEntity> columnList = new ArrayList<ColumnEntity>();
+        for (ColumnEntity column : table.getInsertColumns()) {
+            if (updateColumnNameSet == null || updateColumnNameSet.contains(column.getName())) {
+                columnList.add(column);
             }
         }
-        return id;
+        if (columnList.isEmpty()) return;
+
+        final ColumnEntity id = table.getId();
+        final ColumnEntity[] columns = columnList.toArray(new ColumnEntity[columnList.size()]);
+        final String sql = SqlInfoBuilder.buildBulkUpdateSql(table, columns);
+
+        final String[] columnNames = updateColumnNames;
+        execBulk(entities, entities.size(), new BulkExecutor() {
+            @Override
+            public void exec(List<?> entities, int start, int end) throws DbException {
+                StatementCache statementCache = table.getStatementCache();
+                SQLiteStatement statement = null;
+                try {
+                    statement = statementCache.acquire(sql);
+                    for (int i = start; i < end; i++) {
+                        Object entity = entities.get(i);
+                        if (id.getColumnValue(entity) == null) {
+                            throw new DbException("this entity[" + table.getEntityType() + "]'s id value is null");
+                        }
+                        ColumnEntity[] changedColumns = columnNames == null || columnNames.length == 0
+                                ? table.getChangedColumns(entity) : null;
+                        if (changedColumns != null) {
+                            // TrackedEntity只写入修改过的列
+                            if (changedColumns.length > 0) {
+                                execUpdateColumns(table, entity, changedColumns);
+                                table.takeSnapshot(entity);
+                            }
+                            continue;
+                        }
+                        int index = 1;
+                        for (ColumnEntity column : columns) {
+                            column.bindValue(statement, index++, entity);
+                        }
+                        id.bindValue(statement, index, entity);
+                        statement.execute();
+                        updateSnapshot(table, entity, columnNames);
+                    }
+                } catch (DbException e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new DbException(e);
+                } finally {
+                    if (statement != null) {
+                        statementCache.release(sql, statement);
+                    }
+                }
+            }
+        });
     }
 
+    /**
+     * 按列集合update一个实体, 相同的列集合复用缓存中的statement.
+     */
+    private void execUpdateColumns(TableEntity<?> table, Object entity, ColumnEntity[] columns) throws DbException {
+        ColumnEntity id = table.getId();
+        if (id.getColumnValue(entity) == null) {
+            throw new DbException("this entity[" + table.getEntityType() + "]'s id value is null");
+        }
+        String sql = SqlInfoBuilder.buildBulkUpdateSql(table, columns);
+        StatementCache statementCache = table.getStatementCache();
+        SQLiteStatement statement = null;
+        try {
+            statement = statementCache.acquire(sql);
+            int index = 1;
+            for (ColumnEntity column : columns) {
+                column.bindValue(statement, index++, entity);
+            }
+            id.bindValue(statement, index, entity);
+            statement.execute();
+        } catch (Throwable e) {
+            throw new DbException(e);
+        } finally {
+            if (statement != null) {
+                statementCache.release(sql, statement);
+            }
+        }
+    }
+
+    /**
+     * update后更新TrackedEntity的快照: 写入所有列时重新记录, 否则只更新写入的列.
+     */
+    private static void updateSnapshot(TableEntity<?> table, Object entity, String[] updateColumnNames) {
+        if (updateColumnNames == null || updateColumnNames.length == 0) {
+            table.takeSnapshot(entity);
+            return;
+        }
+        ColumnEntity[] columns = new ColumnEntity[updateColumnNames.length];
+        for (int i = 0; i < updateColumnNames.length; i++) {
+            columns[i] = table.getColumnMap().get(updateColumnNames[i]);
+        }
+        table.refreshSnapshot(entity, columns);
+    }
+
+    //************************************************ tools ***********************************
+
     @Override
     public void close() throws IOException {
         if (DAO_MAP.containsKey(daoConfig)) {
             DAO_MAP.remove(daoConfig);
+            // 在锁外等待写线程: 最后一批提交时的TableChangeListener可能调用*Async, 需要获取这个锁
+            WriteQueue queue;
+            synchronized (this) {
+                closed = true;
+                queue = writeQueue;
+                writeQueue = null;
+            }
+            if (queue != null) {
+                queue.close();
+            }
+            if (maintenance != null) {
+                maintenance.close();
+            }
+            releaseTableStatements();
+            if (readPool != null) {
+                readPool.close();
+            }
             this.database.close();
         }
     }
 
+    ///////////////////////////////////// change notification //////////////////////////////////////////
+
+    @Override
+    public void addTableChangeListener(TableChangeListener listener) {
+        if (listener != null) {
+            tableChangeListeners.addIfAbsent(listener);
+        }
+    }
+
+    @Override
+    public void removeTableChangeListener(TableChangeListener listener) {
+        tableChangeListeners.remove(listener);
+    }
+
+    /**
+     * 写操作结束后调用; 在事务中时记下, 等最外层事务提交后通知.
+     */
+    @Override
+    protected void notifyTableChanged(String tableName) {
+        if (tableChangeListeners.isEmpty()) return;
+        pendingTableChanges.get().add(tableName);
+        if (!database.inTransaction()) {
+            dispatchTableChanges();
+        }
+    }
+
+    private void dispatchTableChanges() {
+        HashSet<String> pending = pendingTableChanges.get();
+        if (pending.isEmpty()) return;
+        // 有未知的表时只通知一次null
+        String[] tableNames = pending.contains(null)
+                ? new String[]{null} : pending.toArray(new String[pending.size()]);
+        pending.clear();
+        for (TableChangeListener listener : tableChangeListeners) {
+            for (String tableName : tableNames) {
+                try {
+                    listener.onTableChanged(this, tableName);
+                } catch (Throwable ex) {
+                    LogUtil.e(ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
     ///////////////////////////////////// exec sql /////////////////////////////////////////////////////
 
-    private void beginTransaction() {
-        if (allowTransaction) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && database.isWriteAheadLoggingEnabled()) {
-                database.beginTransactionNonExclusive();
-            } else {
+    @Override
+    public <V> V runInTransaction(Callable<V> callable) throws DbException {
+        return runInTransaction(TransactionMode.DEFAULT, callable);
+    }
+
+    @Override
+    public <V> V runInTransaction(TransactionMode mode, Callable<V> callable) throws DbException {
+        if (database.inTransaction()) {
+            return runInSavepoint(callable);
+        }
+
+        onWrite();
+        if (mode == TransactionMode.IMMEDIATE) {
+            database.beginTransactionNonExclusive();
+        } else if (mode == TransactionMode.EXCLUSIVE) {
+            database.beginTransaction();
+        } else {
+            beginDatabaseTransaction();
+        }
+        boolean success = false;
+        try {
+            V result = callable.call();
+            database.setTransactionSuccessful();
+            success = true;
+            return result;
+        } catch (DbException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new DbException(e);
+        } finally {
+            try {
+                // 回滚savepoint失败时事务可能已被结束, 见rollbackToSavepoint
+                if (database.inTransaction()) {
+                    database.endTransaction();
+                }
+            } finally {
+                onWrite();
+                // 事务中的写操作在提交前已使缓存失效, 提交后再失效一次, 避免期间读到的旧值留在缓存中
+                invalidateEntityCaches();
+                if (success) {
+                    dispatchTableChanges();
+                } else {
+                    pendingTableChanges.get().clear();
+                    onTransactionRolledBack();
+                }
+            }
+        }
+    }
+
+    private <V> V runInSavepoint(Callable<V> callable) throws DbException {
+        String savepoint = "sp_" + savepointSequence.incrementAndGet();
+        database.execSQL("SAVEPOINT " + savepoint);
+        try {
+            V result = callable.call();
+            database.execSQL("RELEASE " + savepoint);
+            return result;
+        } catch (Throwable e) {
+            try {
+                rollbackToSavepoint(savepoint);
+            } catch (DbException ex) {
+                LogUtil.e(e.getMessage(), e);
+                throw ex;
+            } finally {
+                onTransactionRolledBack();
+            }
+            if (e instanceof DbException) {
+                throw (DbException) e;
+            }
+            throw new DbException(e);
+        }
+    }
+
+    /**
+     * 撤销savepoint之后的修改并释放savepoint.
+     * 失败时让整个事务回滚: 标记最外层事务失败(包括直接通过getDatabase()开启的事务)并抛出异常,
+     * 即使调用者捕获了异常, 外层也不会提交应撤销的修改.
+     */
+    private void rollbackToSavepoint(String savepoint) throws DbException {
+        Throwable error = null;
+        try {
+            // 以"ROL"开头的语句会被SQLiteDatabase当作回滚整个事务, 加注释绕过
+            database.execSQL("/* savepoint */ ROLLBACK TO " + savepoint);
+            if (database.inTransaction()) {
+                database.execSQL("RELEASE " + savepoint);
+            }
+        } catch (Throwable ex) {
+            error = ex;
+        }
+        if (error == null && database.inTransaction()) return;
+
+        if (database.inTransaction()) {
+            // 未标记成功的嵌套事务结束时, SQLiteDatabase会回滚整个外层事务
+            try {
                 database.beginTransaction();
+                database.endTransaction();
+            } catch (Throwable ex) {
+                LogUtil.e(ex.getMessage(), ex);
+            }
+            throw new DbException("rollback to savepoint " + savepoint + " failed", error);
+        }
+        // 跳过注释的平台上语句被当作ABORT执行, 整个事务已回滚
+        throw new DbException("transaction aborted while rolling back to savepoint " + savepoint, error);
+    }
+
+    private static final class JoinedTransaction {
+        /**
+         * null表示未能建立savepoint
+         */
+        final String savepoint;
+        boolean successful = false;
+
+        JoinedTransaction(String savepoint) {
+            this.savepoint = savepoint;
+        }
+    }
+
+    /**
+     * 当前线程已在事务中(如runInTransaction)时加入该事务, 不再嵌套begin/end;
+     * 操作在自己的savepoint中执行, 失败时只撤销该操作已写入的部分(如批量写入的前几段),
+     * 是否回滚整个事务由外层决定.
+     */
+    private void beginTransaction() throws DbException {
+        onWrite();
+        if (allowTransaction) {
+            if (database.inTransaction()) {
+                ArrayList<JoinedTransaction> joined = joinedTransactions.get();
+                // 按层数命名, 相同的sql可复用连接中编译好的语句
+                String savepoint = "op_" + joined.size();
+                try {
+                    database.execSQL("SAVEPOINT " + savepoint);
+                } catch (Throwable ex) {
+                    // 调用者仍会在finally中endTransaction(), 放入没有savepoint的一层
+                    joined.add(new JoinedTransaction(null));
+                    throw new DbException(ex);
+                }
+                joined.add(new JoinedTransaction(savepoint));
+                return;
             }
+            beginDatabaseTransaction();
+        }
+    }
+
+    /**
+     * 记录写操作时间, 后台维护只在空闲时执行
+     */
+    private void onWrite() {
+        if (maintenance != null) {
+            maintenance.onWrite();
+        }
+    }
+
+    private void beginDatabaseTransaction() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && database.isWriteAheadLoggingEnabled()) {
+            database.beginTransactionNonExclusive();
+        } else {
+            database.beginTransaction();
         }
     }
 
     private void setTransactionSuccessful() {
         if (allowTransaction) {
-            database.setTransactionSuccessful();
+            ArrayList<JoinedTransaction> joined = joinedTransactions.get();
+            if (joined.isEmpty()) {
+                database.setTransactionSuccessful();
+            } else {
+                joined.get(joined.size() - 1).successful = true;
+            }
         }
     }
 
-    private void endTransaction() {
+    private void endTransaction() throws DbException {
+        onWrite();
         if (allowTransaction) {
+            ArrayList<JoinedTransaction> joined = joinedTransactions.get();
+            if (!joined.isEmpty()) {
+                JoinedTransaction transaction = joined.remove(joined.size() - 1);
+                if (transaction.savepoint == null) {
+                    return;
+                }
+                if (transaction.successful) {
+                    try {
+                        database.execSQL("RELEASE " + transaction.savepoint);
+                    } catch (Throwable ex) {
+                        throw new DbException(ex);
+                    }
+                } else {
+                    try {
+                        rollbackToSavepoint(transaction.savepoint);
+                    } finally {
+                        onTransactionRolledBack();
+                    }
+                }
+                return;
+            }
             database.endTransaction();
         }
     }
@@ -521,6 +1318,17 @@ public final class DbManagerImpl extends DbBase {
 
     @Override
     public int executeUpdateDelete(SqlInfo sqlInfo) throws DbException {
+        try {
+            return execUpdateDelete(sqlInfo);
+        } finally {
+            invalidateEntityCaches();
+            notifyTableChanged(null);
+            onSqlExecuted(sqlInfo.getSql());
+        }
+    }
+
+    private int execUpdateDelete(SqlInfo sqlInfo) throws DbException {
+        onWrite();
         SQLiteStatement statement = null;
         try {
             statement = sqlInfo.buildStatement(database);
@@ -540,6 +1348,7 @@ public final class DbManagerImpl extends DbBase {
 
     @Override
     public int executeUpdateDelete(String sql) throws DbException {
+        onWrite();
         SQLiteStatement statement = null;
         try {
             statement = database.compileStatement(sql);
@@ -547,6 +1356,9 @@ public final class DbManagerImpl extends DbBase {
         } catch (Throwable e) {
             throw new DbException(e);
         } finally {
+            invalidateEntityCaches();
+            notifyTableChanged(null);
+            onSqlExecuted(sql);
             if (statement != null) {
                 try {
                     statement.releaseReference();
@@ -559,6 +1371,18 @@ public final class DbManagerImpl extends DbBase {
 
     @Override
     public void execNonQuery(SqlInfo sqlInfo) throws DbException {
+        try {
+            execSchemaSql(sqlInfo);
+        } finally {
+            invalidateEntityCaches();
+            notifyTableChanged(null);
+            onSqlExecuted(sqlInfo.getSql());
+        }
+    }
+
+    @Override
+    protected void execSchemaSql(SqlInfo sqlInfo) throws DbException {
+        onWrite();
         SQLiteStatement statement = null;
         try {
             statement = sqlInfo.buildStatement(database);
@@ -576,19 +1400,82 @@ public final class DbManagerImpl extends DbBase {
         }
     }
 
+    /**
+     * 同{@link #execNonQuery(TableEntity, SqlInfo)}, 返回插入行的rowid, 失败时返回-1.
+     */
+    private long execInsert(TableEntity<?> table, SqlInfo sqlInfo) throws DbException {
+        StatementCache statementCache = null;
+        SQLiteStatement statement = null;
+        try {
+            statementCache = table.getStatementCache();
+            statement = statementCache.acquire(sqlInfo.getSql());
+            sqlInfo.bindArgs(statement);
+            return statement.executeInsert();
+        } catch (Throwable e) {
+            throw new DbException(e);
+        } finally {
+            if (statement != null) {
+                statementCache.release(sqlInfo.getSql(), statement);
+            }
+        }
+    }
+
+    /**
+     * 使用表的预编译statement缓存执行, 只用于sql结构固定的实体操作.
+     */
+    private void execNonQuery(TableEntity<?> table, SqlInfo sqlInfo) throws DbException {
+        StatementCache statementCache = null;
+        SQLiteStatement statement = null;
+        try {
+            statementCache = table.getStatementCache();
+            statement = statementCache.acquire(sqlInfo.getSql());
+            sqlInfo.bindArgs(statement);
+            statement.execute();
+        } catch (Throwable e) {
+            throw new DbException(e);
+        } finally {
+            if (statement != null) {
+                statementCache.release(sqlInfo.getSql(), statement);
+            }
+        }
+    }
+
     @Override
     public void execNonQuery(String sql) throws DbException {
+        onWrite();
         try {
             database.execSQL(sql);
         } catch (Throwable e) {
             throw new DbException(e);
+        } finally {
+            invalidateEntityCaches();
+            notifyTableChanged(null);
+            onSqlExecuted(sql);
+        }
+    }
+
+    /**
+     * 查询使用的连接: 有只读连接且当前线程不在事务中时使用只读连接,
+     * 事务中需要读到未提交的修改, 使用写连接.
+     */
+    private SQLiteDatabase getReadDatabase() {
+        if (readPool != null && !database.isDbLockedByCurrentThread()) {
+            return readPool.next();
         }
+        return database;
     }
 
     @Override
-    public Cursor execQuery(SqlInfo sqlInfo) throws DbException {
+    public Cursor execQuery(final SqlInfo sqlInfo) throws DbException {
         try {
-            return database.rawQuery(sqlInfo.getSql(), sqlInfo.getBindArgsAsStrArray());
+            // 按类型绑定参数, 而不是rawQuery(sql, String[])的全部按字符串绑定
+            return getReadDatabase().rawQueryWithFactory(new SQLiteDatabase.CursorFactory() {
+                @Override
+                public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+                    sqlInfo.bindArgs(query);
+                    return new SQLiteCursor(masterQuery, editTable, query);
+                }
+            }, sqlInfo.getSql(), null, null);
         } catch (Throwable e) {
             throw new DbException(e);
         }
@@ -597,7 +1484,7 @@ public final class DbManagerImpl extends DbBase {
     @Override
     public Cursor execQuery(String sql) throws DbException {
         try {
-            return database.rawQuery(sql, null);
+            return getReadDatabase().rawQuery(sql, null);
         } catch (Throwable e) {
             throw new DbException(e);
         }
@@ -0,0 +1,91 @@
+package com.jack.cache.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.jack.cache.db.config.DbPragmas;
+import com.jack.executor.utils.IOUtil;
+import com.jack.executor.utils.LogUtil;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WAL模式下的只读连接池, 查询轮流使用其中的连接, 不与写连接互相等待.
+ */
+/* package */ final class ReadConnectionPool {
+
+    private final SQLiteDatabase[] connections;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private ReadConnectionPool(SQLiteDatabase[] connections) {
+        this.connections = connections;
+    }
+
+    /**
+     * @param writer       已打开的写连接
+     * @param size         只读连接数
+     * @param sqlCacheSize 每个连接的sql编译缓存大小
+     * @param pragmas      应用到每个连接的设置, 可以为null
+     * @return 写连接未开启WAL或打开失败时返回null
+     */
+    public static ReadConnectionPool open(SQLiteDatabase writer, int size, int sqlCacheSize, DbPragmas pragmas) {
+        if (size <= 0 || !isWalEnabled(writer)) return null;
+
+        SQLiteDatabase[] connections = new SQLiteDatabase[size];
+        try {
+            for (int i = 0; i < size; i++) {
+                connections[i] = SQLiteDatabase.openDatabase(writer.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+                setMaxSqlCacheSize(connections[i], sqlCacheSize);
+                if (pragmas != null) {
+                    pragmas.applyToReader(connections[i]);
+                }
+            }
+        } catch (Throwable ex) {
+            LogUtil.e(ex.getMessage(), ex);
+            for (SQLiteDatabase connection : connections) {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+            return null;
+        }
+        return new ReadConnectionPool(connections);
+    }
+
+    public SQLiteDatabase next() {
+        int index = (next.getAndIncrement() & Integer.MAX_VALUE) % connections.length;
+        return connections[index];
+    }
+
+    public void close() {
+        for (SQLiteDatabase connection : connections) {
+            try {
+                connection.close();
+            } catch (Throwable ex) {
+                LogUtil.e(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /* package */
+    static void setMaxSqlCacheSize(SQLiteDatabase database, int sqlCacheSize) {
+        try {
+            database.setMaxSqlCacheSize(Math.min(sqlCacheSize, SQLiteDatabase.MAX_SQL_CACHE_SIZE));
+        } catch (Throwable ex) { // 低版本不允许调小
+            LogUtil.e(ex.getMessage(), ex);
+        }
+    }
+
+    private static boolean isWalEnabled(SQLiteDatabase database) {
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("PRAGMA journal_mode", null);
+            return cursor.moveToNext() && "wal".equalsIgnoreCase(cursor.getString(0));
+        } catch (Throwable ex) {
+            LogUtil.e(ex.getMessage(), ex);
+            return false;
+        } finally {
+            IOUtil.closeQuietly(cursor);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.jack.cache.db;
+
+import com.jack.cache.DbManager;
+import com.jack.cache.db.table.ColumnEntity;
+import com.jack.cache.db.table.TableEntity;
+import com.jack.cache.exception.DbException;
+import com.jack.executor.utils.LogUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 异步写队列: 写操作排队后每隔delay毫秒或每积累batchSize个, 在一个事务中提交.
+ * 同一行(表+id)上连续的同类操作合并为一个, update只在同一个实体对象上合并更新的列.
+ * <p>
+ * 实体的值在提交时读取, 所以合并后写入的是实体最新的值.
+ * 写线程是守护线程, 需要保证写入的数据在退出前调用flush()或DbManager#close().
+ */
+/* package */ final class WriteQueue {
+
+    private enum OpType {
+        SAVE_OR_UPDATE, REPLACE, UPDATE, DELETE
+    }
+
+    private final DbManager db;
+    private final long delay;
+    private final int batchSize;
+    private final ScheduledExecutorService executor;
+    private volatile Thread writerThread;
+
+    private final Object lock = new Object();
+    private List<WriteOp> pendingOps = new ArrayList<WriteOp>();
+    /**
+     * key: 表名 + id, value: 该行最后一个排队的操作
+     */
+    private HashMap<String, WriteOp> rowOpMap = new HashMap<String, WriteOp>();
+    private boolean flushScheduled = false;
+    private boolean closed = false;
+
+    public WriteQueue(DbManager db, long delay, int batchSize) {
+        this.db = db;
+        this.delay = delay;
+        this.batchSize = batchSize;
+        final String threadName = "db-write-" + db.getDaoConfig().getDbName();
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                thread.setDaemon(true);
+                writerThread = thread;
+                return thread;
+            }
+        });
+    }
+
+    public Future<Void> saveOrUpdate(Object entity) throws DbException {
+        return enqueue(OpType.SAVE_OR_UPDATE, entity, null);
+    }
+
+    public Future<Void> replace(Object entity) throws DbException {
+        return enqueue(OpType.REPLACE, entity, null);
+    }
+
+    public Future<Void> update(Object entity, String... updateColumnNames) throws DbException {
+        return enqueue(OpType.UPDATE, entity, updateColumnNames);
+    }
+
+    public Future<Void> delete(Object entity) throws DbException {
+        return enqueue(OpType.DELETE, entity, null);
+    }
+
+    /**
+     * @return 当前已排队的操作全部完成时完成; 已关闭时返回已完成的Future
+     */
+    public Future<Void> flush() {
+        WriteFuture future = new WriteFuture();
+        synchronized (lock) {
+            if (closed) {
+                future.finish(null);
+                return future;
+            }
+            addFlushMarker(future);
+        }
+        executor.execute(flushTask);
+        return future;
+    }
+
+    /**
+     * 提交剩余的操作并停止写线程, 之后的写操作抛出DbException.
+     * 在写线程中调用时(如在写操作的回调中关闭数据库)直接提交, 等待flush的结果会死锁.
+     */
+    public void close() {
+        WriteFuture future = new WriteFuture();
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            addFlushMarker(future);
+        }
+        if (Thread.currentThread() == writerThread) {
+            flushTask.run();
+        } else {
+            executor.execute(flushTask);
+            try {
+                future.get();
+            } catch (Throwable ex) {
+                LogUtil.e(ex.getMessage(), ex);
+            }
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * @return 已完成的Future, 用于没有写队列时的flush
+     */
+    public static Future<Void> completedFuture() {
+        WriteFuture future = new WriteFuture();
+        future.finish(null);
+        return future;
+    }
+
+    private void addFlushMarker(WriteFuture future) {
+        WriteOp op = new WriteOp(null, null, null);
+        op.futures.add(future);
+        pendingOps.add(op);
+    }
+
+    private Future<Void> enqueue(OpType type, Object entity, String[] columns) throws DbException {
+        if (entity == null) {
+            throw new DbException("entity may not be null");
+        }
+        TableEntity<?> table = db.getTable(entity.getClass());
+        ColumnEntity id = table.getId();
+        Object idValue = id.getFieldValue(entity);
+        if (idValue != null && id.isAutoId() && ((Number) idValue).longValue() == 0) {
+            idValue = null; // 未保存过, 不合并
+        }
+        String rowKey = idValue == null ? null : table.getName() + "#" + idValue;
+
+        WriteFuture future = new WriteFuture();
+        boolean flushNow;
+        synchronized (lock) {
+            if (closed) {
+                throw new DbException("async write queue closed: " + db.getDaoConfig().getDbName());
+            }
+            WriteOp lastOp = rowKey == null ? null : rowOpMap.get(rowKey);
+            // 不同的实体对象各自的修改列不同, update时不合并
+            if (lastOp != null && lastOp.type == type
+                    && (type != OpType.UPDATE || lastOp.entity == entity)) {
+                lastOp.merge(entity, columns);
+                lastOp.futures.add(future);
+            } else {
+                WriteOp op = new WriteOp(type, entity, columns);
+                op.futures.add(future);
+                pendingOps.add(op);
+                if (rowKey != null) {
+                    rowOpMap.put(rowKey, op);
+                }
+            }
+
+            flushNow = pendingOps.size() >= batchSize;
+            if (!flushNow && !flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(flushTask, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (flushNow) {
+            executor.execute(flushTask);
+        }
+        return future;
+    }
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            List<WriteOp> ops;
+            synchronized (lock) {
+                flushScheduled = false;
+                if (pendingOps.isEmpty()) return;
+                ops = pendingOps;
+                pendingOps = new ArrayList<WriteOp>();
+                rowOpMap = new HashMap<String, WriteOp>();
+            }
+            commit(ops);
+        }
+    };
+
+    private void commit(final List<WriteOp> ops) {
+        boolean success = false;
+        try {
+            // 提交后使实体缓存失效并通知表变化, 失败时回滚并丢弃快照
+            db.runInTransaction(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (WriteOp op : ops) {
+                        op.exec(db);
+                    }
+                    return null;
+                }
+            });
+            success = true;
+        } catch (Throwable ex) {
+            LogUtil.e("batch commit failed, retry one by one: " + ex.getMessage(), ex);
+        }
+
+        if (success) {
+            for (WriteOp op : ops) {
+                op.finish(null);
+            }
+        } else { // 逐个提交, 只让失败的操作报错
+            for (WriteOp op : ops) {
+                try {
+                    op.exec(db);
+                    op.finish(null);
+                } catch (Throwable ex) {
+                    op.finish(ex);
+                }
+            }
+        }
+    }
+
+    private static final class WriteOp {
+        final OpType type;
+        Object entity;
+        LinkedHashSet<String> columns;
+        final List<WriteFuture> futures = new ArrayList<WriteFuture>(1);
+
+        WriteOp(OpType type, Object entity, String[] columns) {
+            this.type = type;
+            this.entity = entity;
+            if (columns != null && columns.length > 0) {
+                this.columns = new LinkedHashSet<String>(Arrays.asList(columns));
+            }
+        }
+
+        void merge(Object entity, String[] columns) {
+            this.entity = entity;
+            if (type == OpType.UPDATE && this.columns != null) {
+                if (columns == null || columns.length == 0) {
+                    this.columns = null; // 全部列
+                } else {
+                    this.columns.addAll(Arrays.asList(columns));
+                }
+            }
+        }
+
+        void exec(DbManager db) throws DbException {
+            if (type == null) return; // flush标记
+            switch (type) {
+                case SAVE_OR_UPDATE:
+                    db.saveOrUpdate(entity);
+                    break;
+                case REPLACE:
+                    db.replace(entity);
+                    break;
+                case UPDATE:
+                    if (columns == null) {
+                        db.update(entity);
+                    } else {
+                        db.update(entity, columns.toArray(new String[columns.size()]));
+                    }
+                    break;
+                case DELETE:
+                    db.delete(entity);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void finish(Throwable error) {
+            for (WriteFuture future : futures) {
+                future.finish(error);
+            }
+        }
+    }
+
+    private static final class WriteFuture implements Future<Void> {
+        private boolean done = false;
+        private Throwable error;
+
+        synchronized void finish(Throwable error) {
+            this.error = error;
+            this.done = true;
+            notifyAll();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public synchronized Void get() throws InterruptedException, ExecutionException {
+            while (!done) {
+                wait();
+            }
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return null;
+        }
+
+        @Override
+        public synchronized Void get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+            while (!done) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                wait(remaining);
+            }
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return null;
+        }
+    }
+}
@@ -12,6 +12,9 @@ public enum DbConfigs {
     HTTP(new DbManager.DaoConfig()
             .setDbName("xUtils_http_cache.db")
             .setDbVersion(1)
+            .setReadPoolSize(2)
+            .setPragmas(DbPragmas.forCache())
+            .setMaintenanceInterval(10 * 60 * 1000)
             .setDbOpenListener(new DbManager.DbOpenListener() {
                 @Override
                 public void onDbOpened(DbManager db) {
@@ -32,6 +35,9 @@ public enum DbConfigs {
     COOKIE(new DbManager.DaoConfig()
             .setDbName("xUtils_http_cookie.db")
             .setDbVersion(1)
+            .setReadPoolSize(1)
+            .setPragmas(DbPragmas.forSmallWrites())
+            .setMaintenanceInterval(30 * 60 * 1000)
             .setDbOpenListener(new DbManager.DbOpenListener() {
                 @Override
                 public void onDbOpened(DbManager db) {
@@ -0,0 +1,313 @@
+package com.jack.cache.db.config;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.jack.executor.utils.IOUtil;
+import com.jack.executor.utils.LogUtil;
+
+/**
+ * SQLite的PRAGMA设置, 通过DaoConfig#setPragmas设置, 打开数据库时应用.
+ * 未设置的项保持SQLite(及系统)的默认值.
+ * <p>
+ * page_size, auto_vacuum只应用到新建的库, 在打开后建表之前设置并VACUUM一次
+ * (系统打开数据库时已建立android_metadata表, 直接设置不会生效); 已有的库不做修改, 避免打开时重写整个库;
+ * 其余的在DbOpenListener之后设置(开启WAL会重置连接的synchronous等设置), 连接级的设置同样应用到只读连接.
+ */
+public final class DbPragmas {
+
+    public enum Synchronous {
+        OFF, NORMAL, FULL, EXTRA
+    }
+
+    public enum TempStore {
+        DEFAULT, FILE, MEMORY
+    }
+
+    public enum LockingMode {
+        NORMAL, EXCLUSIVE
+    }
+
+    public enum AutoVacuum {
+        NONE, FULL, INCREMENTAL
+    }
+
+    private Integer pageSize;
+    private Integer cacheSize;
+    private Long mmapSize;
+    private Synchronous synchronous;
+    private TempStore tempStore;
+    private Long journalSizeLimit;
+    private Integer walAutoCheckpoint;
+    private LockingMode lockingMode;
+    private AutoVacuum autoVacuum;
+
+    public DbPragmas() {
+    }
+
+    /**
+     * 缓存类的库: 丢失最后几个事务可以接受(WAL下NORMAL不会损坏数据库, 只在掉电时可能丢失最近的提交),
+     * 读多写少, 内容较大.
+     */
+    public static DbPragmas forCache() {
+        return new DbPragmas()
+                .setSynchronous(Synchronous.NORMAL)
+                .setTempStore(TempStore.MEMORY)
+                .setCacheSize(-2048) // 2MB
+                .setMmapSize(32 * 1024 * 1024) // 平台SQLite未开启mmap时无效
+                .setJournalSizeLimit(4 * 1024 * 1024)
+                .setAutoVacuum(AutoVacuum.INCREMENTAL);
+    }
+
+    /**
+     * 数据量小, 写入频繁的库(如cookie): 只减少fsync, 限制WAL文件大小.
+     */
+    public static DbPragmas forSmallWrites() {
+        return new DbPragmas()
+                .setSynchronous(Synchronous.NORMAL)
+                .setJournalSizeLimit(512 * 1024)
+                .setAutoVacuum(AutoVacuum.INCREMENTAL);
+    }
+
+    /**
+     * @param pageSize 512到65536之间2的幂
+     */
+    public DbPragmas setPageSize(int pageSize) {
+        if (pageSize < 512 || pageSize > 65536 || (pageSize & (pageSize - 1)) != 0) {
+            throw new IllegalArgumentException("page_size must be a power of two between 512 and 65536: " + pageSize);
+        }
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * @param cacheSize 正数为页数, 负数为KB数(-2000即约2MB)
+     */
+    public DbPragmas setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    /**
+     * @param mmapSize 内存映射读取的最大字节数, 0为不使用
+     */
+    public DbPragmas setMmapSize(long mmapSize) {
+        if (mmapSize < 0) {
+            throw new IllegalArgumentException("mmap_size may not be negative: " + mmapSize);
+        }
+        this.mmapSize = mmapSize;
+        return this;
+    }
+
+    public DbPragmas setSynchronous(Synchronous synchronous) {
+        this.synchronous = synchronous;
+        return this;
+    }
+
+    public DbPragmas setTempStore(TempStore tempStore) {
+        this.tempStore = tempStore;
+        return this;
+    }
+
+    /**
+     * @param journalSizeLimit 事务结束后保留的journal/WAL文件的最大字节数, -1为不限制
+     */
+    public DbPragmas setJournalSizeLimit(long journalSizeLimit) {
+        if (journalSizeLimit < -1) {
+            throw new IllegalArgumentException("journal_size_limit must be >= -1: " + journalSizeLimit);
+        }
+        this.journalSizeLimit = journalSizeLimit;
+        return this;
+    }
+
+    /**
+     * @param walAutoCheckpoint WAL达到多少页时自动checkpoint, 0为关闭自动checkpoint
+     */
+    public DbPragmas setWalAutoCheckpoint(int walAutoCheckpoint) {
+        if (walAutoCheckpoint < 0) {
+            throw new IllegalArgumentException("wal_autocheckpoint may not be negative: " + walAutoCheckpoint);
+        }
+        this.walAutoCheckpoint = walAutoCheckpoint;
+        return this;
+    }
+
+    /**
+     * EXCLUSIVE时其他连接不能访问数据库, 不使用只读连接(DaoConfig#setReadPoolSize).
+     */
+    public DbPragmas setLockingMode(LockingMode lockingMode) {
+        this.lockingMode = lockingMode;
+        return this;
+    }
+
+    /**
+     * 同page_size, 只对新建的库有效; 已有的库保持原来的设置.
+     * INCREMENTAL时空闲页由后台维护(DaoConfig#setMaintenanceInterval)回收.
+     */
+    public DbPragmas setAutoVacuum(AutoVacuum autoVacuum) {
+        this.autoVacuum = autoVacuum;
+        return this;
+    }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public Integer getCacheSize() {
+        return cacheSize;
+    }
+
+    public Long getMmapSize() {
+        return mmapSize;
+    }
+
+    public Synchronous getSynchronous() {
+        return synchronous;
+    }
+
+    public TempStore getTempStore() {
+        return tempStore;
+    }
+
+    public Long getJournalSizeLimit() {
+        return journalSizeLimit;
+    }
+
+    public Integer getWalAutoCheckpoint() {
+        return walAutoCheckpoint;
+    }
+
+    public LockingMode getLockingMode() {
+        return lockingMode;
+    }
+
+    public AutoVacuum getAutoVacuum() {
+        return autoVacuum;
+    }
+
+    public boolean isExclusiveLocking() {
+        return lockingMode == LockingMode.EXCLUSIVE;
+    }
+
+    /**
+     * 打开数据库后, DbOpenListener及建表之前调用.
+     * 此时库中至少已有android_metadata表, page_size, auto_vacuum只有VACUUM后才生效;
+     * 只在还没有其他表的新库上设置并VACUUM(只有android_metadata, 很快), 已有数据的库不执行.
+     */
+    public void applyOnOpen(SQLiteDatabase database) {
+        if (pageSize == null && autoVacuum == null) return;
+        long tableCount = queryLong(database,
+                "SELECT count(*) FROM sqlite_master WHERE name != 'android_metadata'");
+        if (tableCount != 0) { // 已有的库或查询失败
+            return;
+        }
+
+        boolean changed = false;
+        if (pageSize != null) {
+            long current = queryPragma(database, "page_size");
+            if (current >= 0 && current != pageSize) {
+                execPragma(database, "page_size", pageSize);
+                changed = true;
+            }
+        }
+        if (autoVacuum != null) {
+            long current = queryPragma(database, "auto_vacuum");
+            if (current >= 0 && current != autoVacuum.ordinal()) {
+                execPragma(database, "auto_vacuum", autoVacuum.name());
+                changed = true;
+            }
+        }
+        if (!changed) return;
+
+        try {
+            database.execSQL("VACUUM");
+        } catch (Throwable ex) {
+            LogUtil.e("VACUUM failed: " + ex.getMessage(), ex);
+        }
+        // WAL模式的库VACUUM不能修改page_size
+        long actualPageSize = queryPragma(database, "page_size");
+        long actualAutoVacuum = queryPragma(database, "auto_vacuum");
+        if ((pageSize != null && actualPageSize != pageSize)
+                || (autoVacuum != null && actualAutoVacuum != autoVacuum.ordinal())) {
+            LogUtil.w("page_size/auto_vacuum not applied, page_size=" + actualPageSize
+                    + ", auto_vacuum=" + actualAutoVacuum);
+        } else {
+            LogUtil.i("page_size=" + actualPageSize + ", auto_vacuum=" + actualAutoVacuum);
+        }
+    }
+
+    /**
+     * DbOpenListener之后调用, 应用到写连接
+     */
+    public void applyToWriter(SQLiteDatabase database) {
+        applyConnectionPragmas(database);
+        if (synchronous != null) {
+            execPragma(database, "synchronous", synchronous.name());
+        }
+        if (journalSizeLimit != null) {
+            execPragma(database, "journal_size_limit", journalSizeLimit);
+        }
+        if (walAutoCheckpoint != null) {
+            execPragma(database, "wal_autocheckpoint", walAutoCheckpoint);
+        }
+        if (lockingMode != null) {
+            execPragma(database, "locking_mode", lockingMode.name());
+        }
+    }
+
+    /**
+     * 应用到只读连接, 只包含影响读取的设置
+     */
+    public void applyToReader(SQLiteDatabase database) {
+        applyConnectionPragmas(database);
+    }
+
+    private void applyConnectionPragmas(SQLiteDatabase database) {
+        if (cacheSize != null) {
+            execPragma(database, "cache_size", cacheSize);
+        }
+        if (mmapSize != null) {
+            execPragma(database, "mmap_size", mmapSize);
+        }
+        if (tempStore != null) {
+            execPragma(database, "temp_store", tempStore.name());
+        }
+    }
+
+    /**
+     * @return PRAGMA的当前值, 查询失败时返回-1
+     */
+    private static long queryPragma(SQLiteDatabase database, String name) {
+        return queryLong(database, "PRAGMA " + name);
+    }
+
+    /**
+     * @return 第一行第一列, 查询失败时返回-1
+     */
+    private static long queryLong(SQLiteDatabase database, String sql) {
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery(sql, null);
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } catch (Throwable ex) {
+            LogUtil.e(sql + " failed: " + ex.getMessage(), ex);
+            return -1;
+        } finally {
+            IOUtil.closeQuietly(cursor);
+        }
+    }
+
+    /**
+     * 部分PRAGMA设置后返回结果行, execSQL不能执行, 统一用rawQuery.
+     */
+    private static void execPragma(SQLiteDatabase database, String name, Object value) {
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("PRAGMA " + name + "=" + value, null);
+            cursor.moveToFirst();
+        } catch (Throwable ex) {
+            LogUtil.e("PRAGMA " + name + " failed: " + ex.getMessage(), ex);
+        } finally {
+            IOUtil.closeQuietly(cursor);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.jack.cache.db.sqlite.ColumnDbType;
 import com.jack.executor.utils.LogUtil;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -65,53 +66,69 @@ public final class ColumnConverterFactory {
         return false;
     }
 
+    /**
+     * 内置类型的ColumnConverter被registerColumnConverter替换时返回true.
+     * 编译期生成的EntityAdapter按内置的方式读写这些类型, 替换后不能使用.
+     */
+    public static boolean isBuiltInReplaced(Class columnType, ColumnConverter columnConverter) {
+        ColumnConverter builtIn = builtIn_columnConverter_map.get(columnType.getName());
+        return builtIn != null && builtIn != columnConverter;
+    }
+
+    private static void putBuiltIn(Class columnType, ColumnConverter columnConverter) {
+        columnType_columnConverter_map.put(columnType.getName(), columnConverter);
+        builtIn_columnConverter_map.put(columnType.getName(), columnConverter);
+    }
+
     private static final ConcurrentHashMap<String, ColumnConverter> columnType_columnConverter_map;
+    private static final HashMap<String, ColumnConverter> builtIn_columnConverter_map;
 
     static {
         columnType_columnConverter_map = new ConcurrentHashMap<String, ColumnConverter>();
+        builtIn_columnConverter_map = new HashMap<String, ColumnConverter>();
 
         BooleanColumnConverter booleanColumnConverter = new BooleanColumnConverter();
-        columnType_columnConverter_map.put(boolean.class.getName(), booleanColumnConverter);
-        columnType_columnConverter_map.put(Boolean.class.getName(), booleanColumnConverter);
+        putBuiltIn(boolean.class, booleanColumnConverter);
+        putBuiltIn(Boolean.class, booleanColumnConverter);
 
         ByteArrayColumnConverter byteArrayColumnConverter = new ByteArrayColumnConverter();
-        columnType_columnConverter_map.put(byte[].class.getName(), byteArrayColumnConverter);
+        putBuiltIn(byte[].class, byteArrayColumnConverter);
 
         ByteColumnConverter byteColumnConverter = new ByteColumnConverter();
-        columnType_columnConverter_map.put(byte.class.getName(), byteColumnConverter);
-        columnType_columnConverter_map.put(Byte.class.getName(), byteColumnConverter);
+        putBuiltIn(byte.class, byteColumnConverter);
+        putBuiltIn(Byte.class, byteColumnConverter);
 
         CharColumnConverter charColumnConverter = new CharColumnConverter();
-        columnType_columnConverter_map.put(char.class.getName(), charColumnConverter);
-        columnType_columnConverter_map.put(Character.class.getName(), charColumnConverter);
+        putBuiltIn(char.class, charColumnConverter);
+        putBuiltIn(Character.class, charColumnConverter);
 
         DateColumnConverter dateColumnConverter = new DateColumnConverter();
-        columnType_columnConverter_map.put(Date.class.getName(), dateColumnConverter);
+        putBuiltIn(Date.class, dateColumnConverter);
 
         DoubleColumnConverter doubleColumnConverter = new DoubleColumnConverter();
-        columnType_columnConverter_map.put(double.class.getName(), doubleColumnConverter);
-        columnType_columnConverter_map.put(Double.class.getName(), doubleColumnConverter);
+        putBuiltIn(double.class, doubleColumnConverter);
+        putBuiltIn(Double.class, doubleColumnConverter);
 
         FloatColumnConverter floatColumnConverter = new FloatColumnConverter();
-        columnType_columnConverter_map.put(float.class.getName(), floatColumnConverter);
-        columnType_columnConverter_map.put(Float.class.getName(), floatColumnConverter);
+        putBuiltIn(float.class, floatColumnConverter);
+        putBuiltIn(Float.class, floatColumnConverter);
 
         IntegerColumnConverter integerColumnConverter = new IntegerColumnConverter();
-        columnType_columnConverter_map.put(int.class.getName(), integerColumnConverter);
-        columnType_columnConverter_map.put(Integer.class.getName(), integerColumnConverter);
+        putBuiltIn(int.class, integerColumnConverter);
+        putBuiltIn(Integer.class, integerColumnConverter);
 
         LongColumnConverter longColumnConverter = new LongColumnConverter();
-        columnType_columnConverter_map.put(long.class.getName(), longColumnConverter);
-        columnType_columnConverter_map.put(Long.class.getName(), longColumnConverter);
+        putBuiltIn(long.class, longColumnConverter);
+        putBuiltIn(Long.class, longColumnConverter);
 
         ShortColumnConverter shortColumnConverter = new ShortColumnConverter();
-        columnType_columnConverter_map.put(short.class.getName(), shortColumnConverter);
-        columnType_columnConverter_map.put(Short.class.getName(), shortColumnConverter);
+        putBuiltIn(short.class, shortColumnConverter);
+        putBuiltIn(Short.class, shortColumnConverter);
 
         SqlDateColumnConverter sqlDateColumnConverter = new SqlDateColumnConverter();
-        columnType_columnConverter_map.put(java.sql.Date.class.getName(), sqlDateColumnConverter);
+        putBuiltIn(java.sql.Date.class, sqlDateColumnConverter);
 
         StringColumnConverter stringColumnConverter = new StringColumnConverter();
-        columnType_columnConverter_map.put(String.class.getName(), stringColumnConverter);
+        putBuiltIn(String.class, stringColumnConverter);
     }
 }
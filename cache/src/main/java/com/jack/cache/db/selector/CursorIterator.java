@@ -0,0 +1,73 @@
+package com.jack.cache.db.selector;
+
+import android.database.Cursor;
+
+import com.jack.cache.exception.DbException;
+import com.jack.executor.utils.IOUtil;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 按需从cursor读取行的迭代器, 内存占用与结果集大小无关.
+ * 遍历结束时自动关闭cursor, 提前结束遍历时必须调用{@link #close()}.
+ * <p>
+ * {@link #next()}读取失败时抛出IllegalStateException, cause为DbException.
+ *
+ * @param <T> 行类型
+ */
+public abstract class CursorIterator<T> implements Iterator<T>, Closeable {
+
+    private final Cursor cursor;
+    private boolean moved = false;
+    private boolean hasNext = false;
+    private boolean closed = false;
+
+    /* package */ CursorIterator(Cursor cursor) {
+        this.cursor = cursor;
+        this.closed = cursor == null;
+    }
+
+    protected abstract T readRow(Cursor cursor) throws Throwable;
+
+    @Override
+    public boolean hasNext() {
+        if (closed) return false;
+        if (!moved) {
+            hasNext = cursor.moveToNext();
+            moved = true;
+            if (!hasNext) {
+                close();
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        moved = false;
+        try {
+            return readRow(cursor);
+        } catch (Throwable ex) {
+            close();
+            throw new IllegalStateException(new DbException(ex));
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            IOUtil.closeQuietly(cursor);
+        }
+    }
+}
@@ -19,6 +19,7 @@ import android.database.Cursor;
 import android.text.TextUtils;
 
 import com.jack.cache.utils.CursorUtils;
+import com.jack.cache.db.sqlite.SqlInfo;
 import com.jack.cache.db.sqlite.WhereBuilder;
 import com.jack.cache.db.table.DbModel;
 import com.jack.cache.db.table.TableEntity;
@@ -139,7 +140,7 @@ public final class DbModelSelector {
         if (!table.tableIsExist()) return null;
 
         this.limit(1);
-        Cursor cursor = table.getDb().execQuery(this.toString());
+        Cursor cursor = table.getDb().execQuery(this.toSqlInfo());
         if (cursor != null) {
             try {
                 if (cursor.moveToNext()) {
@@ -160,12 +161,13 @@ public final class DbModelSelector {
 
         List<DbModel> result = null;
 
-        Cursor cursor = table.getDb().execQuery(this.toString());
+        Cursor cursor = table.getDb().execQuery(this.toSqlInfo());
         if (cursor != null) {
             try {
                 result = new ArrayList<DbModel>();
+                DbModel.Columns columns = CursorUtils.getDbModelColumns(cursor);
                 while (cursor.moveToNext()) {
-                    DbModel entity = CursorUtils.getDbModel(cursor);
+                    DbModel entity = CursorUtils.getDbModel(cursor, columns);
                     result.add(entity);
                 }
             } catch (Throwable e) {
@@ -177,8 +179,80 @@ public final class DbModelSelector {
         return result;
     }
 
+    /**
+     * 按需读取结果, 用完或提前结束时需要close.
+     */
+    public CursorIterator<DbModel> iterate() throws DbException {
+        TableEntity<?> table = selector.getTable();
+        Cursor cursor = table.tableIsExist() ? table.getDb().execQuery(this.toSqlInfo()) : null;
+        final DbModel.Columns columns = cursor == null ? null : CursorUtils.getDbModelColumns(cursor);
+        return new CursorIterator<DbModel>(cursor) {
+            @Override
+            protected DbModel readRow(Cursor cursor) {
+                return CursorUtils.getDbModel(cursor, columns);
+            }
+        };
+    }
+
+    /**
+     * 逐行访问结果, visitor返回false时结束.
+     */
+    public void forEach(RowVisitor<DbModel> visitor) throws DbException {
+        TableEntity<?> table = selector.getTable();
+        if (!table.tableIsExist()) return;
+
+        Cursor cursor = table.getDb().execQuery(this.toSqlInfo());
+        if (cursor != null) {
+            try {
+                DbModel.Columns columns = CursorUtils.getDbModelColumns(cursor);
+                while (cursor.moveToNext()) {
+                    if (!visitor.visit(CursorUtils.getDbModel(cursor, columns))) break;
+                }
+            } catch (DbException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new DbException(e);
+            } finally {
+                IOUtil.closeQuietly(cursor);
+            }
+        }
+    }
+
+    /**
+     * @return 条件值以参数绑定的查询, 相同结构的查询可复用编译好的语句.
+     */
+    public SqlInfo toSqlInfo() {
+        SqlInfo result = new SqlInfo();
+        WhereBuilder whereBuilder = selector.buildWhere();
+        String where = null;
+        if (whereBuilder != null) {
+            where = whereBuilder.getSql();
+            result.addBindArgs(selector.getTable(), whereBuilder.getBindArgs());
+        }
+        String havingSql = null;
+        if (!TextUtils.isEmpty(groupByColumnName) && having != null && having.getWhereItemSize() > 0) {
+            havingSql = having.getSql();
+            result.addBindArgs(having.getBindArgs());
+        }
+        result.setSql(buildSql(where, havingSql));
+        return result;
+    }
+
     @Override
     public String toString() {
+        WhereBuilder whereBuilder = selector.buildWhere();
+        String where = null;
+        if (whereBuilder != null) {
+            where = whereBuilder.toString();
+        }
+        String havingSql = null;
+        if (having != null && having.getWhereItemSize() > 0) {
+            havingSql = having.toString();
+        }
+        return buildSql(where, havingSql);
+    }
+
+    private String buildSql(String where, String havingSql) {
         StringBuilder result = new StringBuilder();
         result.append("SELECT ");
         if (columnExpressions != null && columnExpressions.length > 0) {
@@ -195,20 +269,20 @@ public final class DbModelSelector {
             }
         }
         result.append(" FROM ").append("\"").append(selector.getTable().getName()).append("\"");
-        WhereBuilder whereBuilder = selector.getWhereBuilder();
-        if (whereBuilder != null && whereBuilder.getWhereItemSize() > 0) {
-            result.append(" WHERE ").append(whereBuilder.toString());
+        if (where != null) {
+            result.append(" WHERE ").append(where);
         }
         if (!TextUtils.isEmpty(groupByColumnName)) {
             result.append(" GROUP BY ").append("\"").append(groupByColumnName).append("\"");
-            if (having != null && having.getWhereItemSize() > 0) {
-                result.append(" HAVING ").append(having.toString());
+            if (havingSql != null) {
+                result.append(" HAVING ").append(havingSql);
             }
         }
         List<Selector.OrderBy> orderByList = selector.getOrderByList();
         if (orderByList != null && orderByList.size() > 0) {
-            for (int i = 0; i < orderByList.size(); i++) {
-                result.append(" ORDER BY ").append(orderByList.get(i).toString()).append(',');
+            result.append(" ORDER BY ");
+            for (Selector.OrderBy orderBy : orderByList) {
+                result.append(orderBy.toString()).append(',');
             }
             result.deleteCharAt(result.length() - 1);
         }
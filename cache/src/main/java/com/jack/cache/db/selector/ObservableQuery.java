@@ -0,0 +1,134 @@
+package com.jack.cache.db.selector;
+
+import com.jack.cache.DbManager;
+import com.jack.cache.exception.DbException;
+import com.jack.executor.utils.LogUtil;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可观察的查询, 见Selector#observe.
+ * 只在依赖的表(查询的表及with(...)的关联表)变化后重新查询, debounce时间内的多次变化合并为一次查询.
+ * 查询和回调都在后台线程执行, 不再需要时调用{@link #close()}.
+ *
+ * @param <T> 实体类型
+ */
+public final class ObservableQuery<T> implements DbManager.TableChangeListener, Closeable {
+
+    /**
+     * 所有ObservableQuery共用, 同一时间只执行一个查询
+     */
+    private static final ScheduledExecutorService EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "db-observer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final Selector<T> selector;
+    private final Set<String> tableNames;
+    private final long debounceMillis;
+    private final QueryObserver<T> observer;
+
+    private ScheduledFuture<?> scheduled;
+    private boolean closed = false;
+
+    /* package */ ObservableQuery(Selector<T> selector, Set<String> tableNames,
+                                  long debounceMillis, QueryObserver<T> observer) {
+        this.selector = selector;
+        this.tableNames = tableNames;
+        this.debounceMillis = Math.max(debounceMillis, 0);
+        this.observer = observer;
+    }
+
+    /**
+     * 注册监听并立即执行一次查询
+     */
+    /* package */ void start() {
+        selector.getTable().getDb().addTableChangeListener(this);
+        schedule(0);
+    }
+
+    /**
+     * 不等待表变化, 重新查询一次
+     */
+    public void refresh() {
+        schedule(0);
+    }
+
+    @Override
+    public void onTableChanged(DbManager db, String tableName) {
+        if (tableName == null || tableNames.contains(tableName)) {
+            schedule(debounceMillis);
+        }
+    }
+
+    @Override
+    public void close() {
+        selector.getTable().getDb().removeTableChangeListener(this);
+        synchronized (this) {
+            closed = true;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+                scheduled = null;
+            }
+        }
+    }
+
+    private synchronized void schedule(long delay) {
+        // 已有待执行的查询时合并; 正在执行的查询不算, 它可能读不到这次变化
+        if (closed || scheduled != null) return;
+        scheduled = EXECUTOR.schedule(queryTask, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private final Runnable queryTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ObservableQuery.this) {
+                if (closed) return;
+                scheduled = null;
+            }
+
+            List<T> result;
+            try {
+                result = selector.findAll();
+            } catch (DbException ex) {
+                notifyError(ex);
+                return;
+            } catch (Throwable ex) {
+                notifyError(new DbException(ex));
+                return;
+            }
+
+            synchronized (ObservableQuery.this) {
+                if (closed) return;
+            }
+            try {
+                observer.onResult(result);
+            } catch (Throwable ex) {
+                LogUtil.e(ex.getMessage(), ex);
+            }
+        }
+    };
+
+    private void notifyError(DbException ex) {
+        synchronized (this) {
+            if (closed) return;
+        }
+        try {
+            observer.onError(ex);
+        } catch (Throwable e) {
+            LogUtil.e(e.getMessage(), e);
+        }
+    }
+}
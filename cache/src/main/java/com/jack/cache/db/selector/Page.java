@@ -0,0 +1,73 @@
+package com.jack.cache.db.selector;
+
+import java.util.List;
+
+/**
+ * Keyset分页的一页结果, 携带读取下一页所需的位置, 见Selector#findPage, Selector#after(Page).
+ *
+ * @param <T> 实体类型
+ */
+public final class Page<T> {
+
+    private final List<T> items;
+    private final boolean hasMore;
+    private final String[] orderColumns;
+    private final Object[] lastValues;
+
+    /**
+     * @param orderColumns 分页的排序列, 最后一个为id
+     * @param lastValues   本页最后一行各排序列的值, 本页为空时为null
+     */
+    /* package */ Page(List<T> items, boolean hasMore, String[] orderColumns, Object[] lastValues) {
+        this.items = items;
+        this.hasMore = hasMore;
+        this.orderColumns = orderColumns;
+        this.lastValues = lastValues;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return 是否还有下一页
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * @return 第一个排序列
+     */
+    public String getOrderColumn() {
+        return orderColumns[0];
+    }
+
+    /**
+     * @return 所有排序列, 最后一个为id
+     */
+    public String[] getOrderColumns() {
+        return orderColumns.clone();
+    }
+
+    /**
+     * @return 本页最后一行第一个排序列的值, 本页为空时为null
+     */
+    public Object getLastValue() {
+        return lastValues == null ? null : lastValues[0];
+    }
+
+    /**
+     * @return 本页最后一行各排序列的值, 与getOrderColumns()对应; 本页为空时为null
+     */
+    public Object[] getLastValues() {
+        return lastValues == null ? null : lastValues.clone();
+    }
+
+    /**
+     * @return 本页最后一行的id, 本页为空时为null
+     */
+    public Object getLastId() {
+        return lastValues == null ? null : lastValues[lastValues.length - 1];
+    }
+}
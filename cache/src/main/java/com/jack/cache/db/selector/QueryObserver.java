@@ -0,0 +1,20 @@
+package com.jack.cache.db.selector;
+
+import com.jack.cache.exception.DbException;
+
+import java.util.List;
+
+/**
+ * 接收ObservableQuery的结果, 在后台线程回调, 更新界面时需要自行切换到UI线程.
+ *
+ * @param <T> 实体类型
+ */
+public interface QueryObserver<T> {
+
+    /**
+     * @param result findAll()的结果, 表不存在时为null
+     */
+    void onResult(List<T> result);
+
+    void onError(DbException ex);
+}
@@ -0,0 +1,91 @@
+package com.jack.cache.db.selector;
+
+import android.database.Cursor;
+
+import com.jack.cache.annotation.Column;
+import com.jack.cache.db.converter.ColumnConverter;
+import com.jack.cache.db.converter.ColumnConverterFactory;
+import com.jack.cache.exception.DbException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+
+/**
+ * 把查询结果映射到任意类(不需要@Table): 按列名匹配字段, 有@Column时用其name, 否则用字段名.
+ * 同一个cursor的所有行只解析一次字段, 没有对应字段的列不读取.
+ *
+ * @param <R> 结果类型, 需要无参构造方法
+ */
+/* package */ final class ResultMapper<R> {
+
+    private final Constructor<R> constructor;
+    /**
+     * 下标为cursor的列下标, 没有对应字段时为null
+     */
+    private final Field[] fields;
+    private final ColumnConverter[] converters;
+
+    public ResultMapper(Class<R> resultType, Cursor cursor) throws DbException {
+        try {
+            this.constructor = resultType.getDeclaredConstructor();
+            this.constructor.setAccessible(true);
+        } catch (Throwable ex) {
+            throw new DbException(resultType.getName() + " has no default constructor", ex);
+        }
+
+        HashMap<String, Field> fieldMap = new HashMap<String, Field>();
+        addFields2Map(resultType, fieldMap);
+
+        int columnCount = cursor.getColumnCount();
+        this.fields = new Field[columnCount];
+        this.converters = new ColumnConverter[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            Field field = fieldMap.get(cursor.getColumnName(i));
+            if (field != null) {
+                field.setAccessible(true);
+                fields[i] = field;
+                converters[i] = ColumnConverterFactory.getColumnConverter(field.getType());
+            }
+        }
+    }
+
+    /**
+     * 读取cursor的当前行, 值为null的列不赋值
+     */
+    public R map(Cursor cursor) throws Throwable {
+        R result = constructor.newInstance();
+        for (int i = 0; i < fields.length; i++) {
+            Field field = fields[i];
+            if (field != null) {
+                Object value = converters[i].getFieldValue(cursor, i);
+                if (value != null) {
+                    field.set(result, value);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void addFields2Map(Class<?> type, HashMap<String, Field> fieldMap) {
+        if (type == null || Object.class.equals(type)) return;
+
+        for (Field field : type.getDeclaredFields()) {
+            int modify = field.getModifiers();
+            if (Modifier.isStatic(modify) || Modifier.isTransient(modify)) {
+                continue;
+            }
+            if (!ColumnConverterFactory.isSupportColumnConverter(field.getType())) {
+                continue;
+            }
+            Column columnAnn = field.getAnnotation(Column.class);
+            String name = columnAnn != null ? columnAnn.name() : field.getName();
+            if (!fieldMap.containsKey(name)) { // 子类字段优先
+                fieldMap.put(name, field);
+            }
+        }
+
+        addFields2Map(type.getSuperclass(), fieldMap);
+    }
+}
@@ -0,0 +1,14 @@
+package com.jack.cache.db.selector;
+
+/**
+ * 逐行访问查询结果, 见Selector#forEach, DbModelSelector#forEach.
+ *
+ * @param <T> 行类型
+ */
+public interface RowVisitor<T> {
+
+    /**
+     * @return false: 结束遍历
+     */
+    boolean visit(T row) throws Throwable;
+}
@@ -18,14 +18,19 @@ package com.jack.cache.db.selector;
 import android.database.Cursor;
 
 import com.jack.cache.utils.CursorUtils;
+import com.jack.cache.db.sqlite.SqlInfo;
 import com.jack.cache.db.sqlite.WhereBuilder;
-import com.jack.cache.db.table.DbModel;
+import com.jack.cache.db.table.ColumnEntity;
 import com.jack.cache.db.table.TableEntity;
 import com.jack.cache.exception.DbException;
 import com.jack.executor.utils.IOUtil;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Author: wyouflf
@@ -41,6 +46,26 @@ public final class Selector<T> {
     private int limit = 0;
     private int offset = 0;
 
+    /**
+     * keyset分页的起始位置, 见after(...): 排序列(到id为止)及上一行各列的值
+     */
+    private String[] seekColumns;
+    private Object[] seekValues;
+
+    /**
+     * 只有 where(id, "=", value) 一个条件时为value, 用于实体缓存
+     */
+    private Object idLookupValue;
+
+    /**
+     * project(...)指定的列, 为null时查询所有列
+     */
+    private String[] projection;
+    /**
+     * 查询后批量读取的关联字段名
+     */
+    private String[] relations;
+
     private Selector(TableEntity<T> table) {
         this.table = table;
     }
@@ -51,35 +76,42 @@ public final class Selector<T> {
 
     public Selector<T> where(WhereBuilder whereBuilder) {
         this.whereBuilder = whereBuilder;
+        this.idLookupValue = null;
         return this;
     }
 
     public Selector<T> where(String columnName, String op, Object value) {
         this.whereBuilder = WhereBuilder.b(columnName, op, value);
+        this.idLookupValue = "=".equals(op) && table.getId().getName().equals(columnName) ? value : null;
         return this;
     }
 
     public Selector<T> and(String columnName, String op, Object value) {
         this.whereBuilder.and(columnName, op, value);
+        this.idLookupValue = null;
         return this;
     }
 
     public Selector<T> and(WhereBuilder where) {
         this.whereBuilder.and(where);
+        this.idLookupValue = null;
         return this;
     }
 
     public Selector<T> or(String columnName, String op, Object value) {
         this.whereBuilder.or(columnName, op, value);
+        this.idLookupValue = null;
         return this;
     }
 
     public Selector or(WhereBuilder where) {
         this.whereBuilder.or(where);
+        this.idLookupValue = null;
         return this;
     }
 
     public Selector<T> expr(String expr) {
+        this.idLookupValue = null;
         if (this.whereBuilder == null) {
             this.whereBuilder = WhereBuilder.b();
         }
@@ -95,6 +127,26 @@ public final class Selector<T> {
         return new DbModelSelector(this, columnExpressions);
     }
 
+    /**
+     * 只查询指定的列, 返回的实体其余字段保持默认值; 总是包含id列.
+     * 未选择的列不会被读入CursorWindow, 适合只需要少数列的宽表查询.
+     */
+    public Selector<T> project(String... columnNames) {
+        this.projection = columnNames != null && columnNames.length > 0 ? columnNames : null;
+        return this;
+    }
+
+    /**
+     * findFirst/findAll(及findPage)后批量读取这些关联字段(@OneToMany, @ForeignKey),
+     * 每个关联只多一次IN(...)查询. iterate/forEach不读取关联.
+     *
+     * @param relationNames 关联字段名
+     */
+    public Selector<T> with(String... relationNames) {
+        this.relations = relationNames != null && relationNames.length > 0 ? relationNames : null;
+        return this;
+    }
+
     public Selector<T> orderBy(String columnName) {
         if (orderByList == null) {
             orderByList = new ArrayList<OrderBy>(5);
@@ -111,6 +163,56 @@ public final class Selector<T> {
         return this;
     }
 
+    /**
+     * Keyset分页: 只取按id排序时位于lastId之后的行, 代替offset.
+     *
+     * @throws IllegalStateException 已有id之前的其他排序
+     */
+    public Selector<T> after(Object lastId) {
+        return after(table.getId().getName(), lastId, lastId);
+    }
+
+    /**
+     * Keyset分页: 只取按(columnName, id)排序时位于(lastValue, lastId)之后的行, 代替offset.
+     * 生成的条件为 "columnName >= ? AND (columnName > ? OR id > ?)"(降序时为<=, <),
+     * 可使用(columnName, id)上的索引, 不需要扫描并丢弃前面的行.
+     * <p>
+     * 排序方向取已添加的orderBy(columnName, desc), 没有时按升序添加; 并自动追加同方向的id排序.
+     * columnName的值不能为null. 按多列排序时使用{@link #findPage(int)}和{@link #after(Page)}.
+     *
+     * @param lastValue 上一页最后一行columnName的值
+     * @param lastId    上一页最后一行的id
+     * @throws IllegalStateException 排序不是(columnName, id), 如已有orderBy(其他列)
+     */
+    public Selector<T> after(String columnName, Object lastValue, Object lastId) {
+        ensureSeekOrder(columnName);
+        String idName = table.getId().getName();
+        if (columnName.equals(idName)) {
+            return seek(new String[]{idName}, new Object[]{lastId});
+        }
+        return seek(new String[]{columnName, idName}, new Object[]{lastValue, lastId});
+    }
+
+    /**
+     * 从page之后继续读取, 条件按page的所有排序列逐列比较.
+     *
+     * @throws IllegalStateException 排序与page的排序列不同
+     */
+    public Selector<T> after(Page<?> page) {
+        if (page.getLastId() == null) { // 空页
+            return this;
+        }
+        ensureSeekOrder(page.getOrderColumn());
+        return seek(page.getOrderColumns(), page.getLastValues());
+    }
+
+    private Selector<T> seek(String[] columns, Object[] values) {
+        checkSeekOrder(columns);
+        this.seekColumns = columns;
+        this.seekValues = values;
+        return this;
+    }
+
     public Selector<T> limit(int limit) {
         this.limit = limit;
         return this;
@@ -144,12 +246,28 @@ public final class Selector<T> {
     public T findFirst() throws DbException {
         if (!table.tableIsExist()) return null;
 
+        boolean byId = idLookupValue != null && seekColumns == null && offset <= 0;
+        if (byId) {
+            T cached = table.getCachedEntity(idLookupValue);
+            if (cached != null) {
+                loadRelations(Collections.singletonList(cached));
+                return cached;
+            }
+        }
+        ensureRelationColumns();
+        long cacheVersion = table.getEntityCacheVersion();
+
+        T result = null;
         this.limit(1);
-        Cursor cursor = table.getDb().execQuery(this.toString());
+        Cursor cursor = table.getDb().execQuery(this.toSqlInfo());
         if (cursor != null) {
             try {
                 if (cursor.moveToNext()) {
-                    return CursorUtils.getEntity(table, cursor);
+                    T entity = CursorUtils.getEntity(table, cursor);
+                    if (byId && projection == null) { // 只缓存完整的实体
+                        table.putCachedEntity(idLookupValue, entity, cacheVersion);
+                    }
+                    result = entity;
                 }
             } catch (Throwable e) {
                 throw new DbException(e);
@@ -157,19 +275,24 @@ public final class Selector<T> {
                 IOUtil.closeQuietly(cursor);
             }
         }
-        return null;
+        if (result != null) {
+            loadRelations(Collections.singletonList(result));
+        }
+        return result;
     }
 
     public List<T> findAll() throws DbException {
         if (!table.tableIsExist()) return null;
 
+        ensureRelationColumns();
         List<T> result = null;
-        Cursor cursor = table.getDb().execQuery(this.toString());
+        Cursor cursor = table.getDb().execQuery(this.toSqlInfo());
         if (cursor != null) {
             try {
                 result = new ArrayList<T>();
+                ColumnEntity[] mapping = CursorUtils.getColumnMapping(table, cursor);
                 while (cursor.moveToNext()) {
-                    T entity = CursorUtils.getEntity(table, cursor);
+                    T entity = CursorUtils.getEntity(table, cursor, mapping);
                     result.add(entity);
                 }
             } catch (Throwable e) {
@@ -178,28 +301,478 @@ public final class Selector<T> {
                 IOUtil.closeQuietly(cursor);
             }
         }
+        loadRelations(result);
         return result;
     }
 
+    /**
+     * 先查询一次, 之后在依赖的表(本表及with(...)的关联表)变化时重新执行findAll(),
+     * debounceMillis内的多次写操作合并为一次查询. 结果在后台线程回调.
+     * 调用后不要再修改这个Selector.
+     *
+     * @return 不再需要时close
+     */
+    public ObservableQuery<T> observe(long debounceMillis, QueryObserver<T> observer) throws DbException {
+        Set<String> tableNames = new HashSet<String>();
+        tableNames.add(table.getName());
+        if (relations != null) {
+            for (String name : relations) {
+                Class<?> targetType = table.getRelation(name).getTargetType();
+                tableNames.add(table.getDb().getTable(targetType).getName());
+            }
+        }
+        ObservableQuery<T> query = new ObservableQuery<T>(this, tableNames, debounceMillis, observer);
+        query.start();
+        return query;
+    }
+
+    /**
+     * 结果映射到resultType, 见{@link ResultMapper}; 一般与{@link #project(String...)}一起使用.
+     */
+    public <R> R findFirst(Class<R> resultType) throws DbException {
+        if (!table.tableIsExist()) return null;
+
+        this.limit(1);
+        Cursor cursor = table.getDb().execQuery(this.toSqlInfo());
+        if (cursor != null) {
+            try {
+                if (cursor.moveToNext()) {
+                    return new ResultMapper<R>(resultType, cursor).map(cursor);
+                }
+            } catch (DbException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new DbException(e);
+            } finally {
+                IOUtil.closeQuietly(cursor);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @see #findFirst(Class)
+     */
+    public <R> List<R> findAll(Class<R> resultType) throws DbException {
+        if (!table.tableIsExist()) return null;
+
+        List<R> result = null;
+        Cursor cursor = table.getDb().execQuery(this.toSqlInfo());
+        if (cursor != null) {
+            try {
+                result = new ArrayList<R>();
+                ResultMapper<R> mapper = new ResultMapper<R>(resultType, cursor);
+                while (cursor.moveToNext()) {
+                    result.add(mapper.map(cursor));
+                }
+            } catch (DbException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new DbException(e);
+            } finally {
+                IOUtil.closeQuietly(cursor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按需读取结果, 用完或提前结束时需要close.
+     */
+    public CursorIterator<T> iterate() throws DbException {
+        return iterate(null);
+    }
+
+    /**
+     * @param reuse 不为null时每一行都读入这个实体并返回它, 调用方不能持有上一行的结果.
+     */
+    public CursorIterator<T> iterate(final T reuse) throws DbException {
+        Cursor cursor = table.tableIsExist() ? table.getDb().execQuery(this.toSqlInfo()) : null;
+        final ColumnEntity[] mapping = cursor == null ? null : CursorUtils.getColumnMapping(table, cursor);
+        return new CursorIterator<T>(cursor) {
+            @Override
+            protected T readRow(Cursor cursor) throws Throwable {
+                if (reuse != null) {
+                    return CursorUtils.fillEntity(table, reuse, cursor, mapping);
+                }
+                return CursorUtils.getEntity(table, cursor, mapping);
+            }
+        };
+    }
+
+    /**
+     * 逐行访问结果, visitor返回false时结束.
+     */
+    public void forEach(RowVisitor<T> visitor) throws DbException {
+        forEach(visitor, null);
+    }
+
+    /**
+     * @param reuse 不为null时每一行都读入这个实体
+     */
+    public void forEach(RowVisitor<T> visitor, T reuse) throws DbException {
+        if (!table.tableIsExist()) return;
+
+        Cursor cursor = table.getDb().execQuery(this.toSqlInfo());
+        if (cursor != null) {
+            try {
+                ColumnEntity[] mapping = CursorUtils.getColumnMapping(table, cursor);
+                while (cursor.moveToNext()) {
+                    T entity = reuse != null
+                            ? CursorUtils.fillEntity(table, reuse, cursor, mapping)
+                            : CursorUtils.getEntity(table, cursor, mapping);
+                    if (!visitor.visit(entity)) break;
+                }
+            } catch (DbException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new DbException(e);
+            } finally {
+                IOUtil.closeQuietly(cursor);
+            }
+        }
+    }
+
+    /**
+     * Keyset分页读取一页, 下一页使用{@link #after(Page)}.
+     * 排序列取after(...)的列或所有orderBy(到id为止, 没有id时追加), 都没有时按id;
+     * 下一页的条件按这些列逐列比较, 各列的值不能为null.
+     * 在副本上查询, 不修改当前Selector的排序, limit等; 不调用after(page)时重复调用返回同一页.
+     */
+    public Page<T> findPage(int pageSize) throws DbException {
+        String orderColumn;
+        if (seekColumns != null) {
+            orderColumn = seekColumns[0];
+        } else {
+            orderColumn = orderByList != null && orderByList.size() > 0
+                    ? orderByList.get(0).getColumnName() : table.getId().getName();
+        }
+        Selector<T> pageSelector = this.copy();
+        pageSelector.ensureSeekOrder(orderColumn);
+        String[] orderColumns = pageSelector.getSeekOrderColumns();
+        ColumnEntity[] orderColumnEntities = new ColumnEntity[orderColumns.length];
+        for (int i = 0; i < orderColumns.length; i++) {
+            orderColumnEntities[i] = table.getColumnMap().get(orderColumns[i]);
+            if (orderColumnEntities[i] == null) {
+                throw new DbException("keyset paging needs entity columns, not found: " + orderColumns[i]);
+            }
+            if (pageSelector.projection != null && !containsColumn(pageSelector.projection, orderColumns[i])) {
+                String[] columns = Arrays.copyOf(pageSelector.projection, pageSelector.projection.length + 1);
+                columns[pageSelector.projection.length] = orderColumns[i];
+                pageSelector.projection = columns;
+            }
+        }
+
+        pageSelector.limit(pageSize + 1).offset(0);
+        List<T> items = pageSelector.findAll();
+        if (items == null) {
+            items = new ArrayList<T>(0);
+        }
+        boolean hasMore = items.size() > pageSize;
+        if (hasMore) {
+            items.remove(items.size() - 1);
+        }
+
+        Object[] lastValues = null;
+        if (items.size() > 0) {
+            T last = items.get(items.size() - 1);
+            lastValues = new Object[orderColumns.length];
+            for (int i = 0; i < orderColumns.length; i++) {
+                lastValues[i] = orderColumnEntities[i].getFieldValue(last);
+            }
+        }
+        return new Page<T>(items, hasMore, orderColumns, lastValues);
+    }
+
     public long count() throws DbException {
+        return queryLong("count(\"" + table.getId().getName() + "\")");
+    }
+
+    /**
+     * @return 没有符合条件的行时返回0
+     */
+    public double sum(String columnName) throws DbException {
+        return queryDouble("sum(\"" + columnName + "\")");
+    }
+
+    /**
+     * @return 没有符合条件的行时返回0
+     */
+    public double avg(String columnName) throws DbException {
+        return queryDouble("avg(\"" + columnName + "\")");
+    }
+
+    /**
+     * 数值列(包括时间)的最小值, 整数列的值超过2^53时有精度损失
+     *
+     * @return 没有符合条件的行(或值都为NULL)时返回null
+     */
+    public Double min(String columnName) throws DbException {
+        return queryNullableDouble("min(\"" + columnName + "\")");
+    }
+
+    /**
+     * 数值列(包括时间)的最大值, 整数列的值超过2^53时有精度损失
+     *
+     * @return 没有符合条件的行(或值都为NULL)时返回null
+     */
+    public Double max(String columnName) throws DbException {
+        return queryNullableDouble("max(\"" + columnName + "\")");
+    }
+
+    /**
+     * 读取一列的值到long数组, 不创建实体也不装箱; NULL读为0.
+     */
+    public long[] pluckLongs(String columnName) throws DbException {
+        Cursor cursor = pluck(columnName);
+        if (cursor == null) return new long[0];
+        try {
+            long[] result = new long[cursor.getCount()];
+            int size = 0;
+            while (cursor.moveToNext()) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, Math.max(16, size * 2));
+                }
+                result[size++] = cursor.getLong(0);
+            }
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        } catch (Throwable e) {
+            throw new DbException(e);
+        } finally {
+            IOUtil.closeQuietly(cursor);
+        }
+    }
+
+    /**
+     * @see #pluckLongs(String)
+     */
+    public double[] pluckDoubles(String columnName) throws DbException {
+        Cursor cursor = pluck(columnName);
+        if (cursor == null) return new double[0];
+        try {
+            double[] result = new double[cursor.getCount()];
+            int size = 0;
+            while (cursor.moveToNext()) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, Math.max(16, size * 2));
+                }
+                result[size++] = cursor.getDouble(0);
+            }
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        } catch (Throwable e) {
+            throw new DbException(e);
+        } finally {
+            IOUtil.closeQuietly(cursor);
+        }
+    }
+
+    /**
+     * @return NULL为null
+     * @see #pluckLongs(String)
+     */
+    public String[] pluckStrings(String columnName) throws DbException {
+        Cursor cursor = pluck(columnName);
+        if (cursor == null) return new String[0];
+        try {
+            String[] result = new String[cursor.getCount()];
+            int size = 0;
+            while (cursor.moveToNext()) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, Math.max(16, size * 2));
+                }
+                result[size++] = cursor.getString(0);
+            }
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        } catch (Throwable e) {
+            throw new DbException(e);
+        } finally {
+            IOUtil.closeQuietly(cursor);
+        }
+    }
+
+    /**
+     * @return 只查询一列的cursor, 表不存在时返回null
+     */
+    private Cursor pluck(String columnName) throws DbException {
+        if (!table.tableIsExist()) return null;
+        return table.getDb().execQuery(this.select("\"" + columnName + "\"").toSqlInfo());
+    }
+
+    public boolean exists() throws DbException {
+        if (!table.tableIsExist()) return false;
+        SqlInfo sqlInfo = this.select("1").toSqlInfo();
+        sqlInfo.setSql("SELECT EXISTS(" + sqlInfo.getSql() + ")");
+        return table.getDb().queryLong(sqlInfo) != 0;
+    }
+
+    private long queryLong(String columnExpression) throws DbException {
+        if (!table.tableIsExist()) return 0;
+        return table.getDb().queryLong(this.select(columnExpression).toSqlInfo());
+    }
+
+    private double queryDouble(String columnExpression) throws DbException {
         if (!table.tableIsExist()) return 0;
+        return table.getDb().queryDouble(this.select(columnExpression).toSqlInfo());
+    }
 
-        DbModelSelector dmSelector = this.select("count(\"" + table.getId().getName() + "\") as count");
-        DbModel firstModel = dmSelector.findFirst();
-        if (firstModel != null) {
-            return firstModel.getLong("count");
+    private Double queryNullableDouble(String columnExpression) throws DbException {
+        if (!table.tableIsExist()) return null;
+        String value = table.getDb().queryString(this.select(columnExpression).toSqlInfo());
+        if (value == null) return null;
+        try {
+            return Double.valueOf(value);
+        } catch (Throwable e) {
+            throw new DbException(e);
         }
-        return 0;
+    }
+
+    /**
+     * @return 条件值以参数绑定的查询, 相同结构的查询可复用编译好的语句.
+     */
+    public SqlInfo toSqlInfo() {
+        SqlInfo result = new SqlInfo();
+        WhereBuilder where = buildWhere();
+        if (where != null) {
+            result.setSql(buildSql(where.getSql()));
+            result.addBindArgs(table, where.getBindArgs());
+        } else {
+            result.setSql(buildSql(null));
+        }
+        return result;
     }
 
     @Override
     public String toString() {
+        WhereBuilder where = buildWhere();
+        if (where != null) {
+            return buildSql(where.toString());
+        } else {
+            return buildSql(null);
+        }
+    }
+
+    /**
+     * @return where条件和keyset条件的组合, 都没有时返回null
+     */
+    /* package */ WhereBuilder buildWhere() {
+        boolean hasWhere = whereBuilder != null && whereBuilder.getWhereItemSize() > 0;
+        if (seekColumns == null) {
+            return hasWhere ? whereBuilder : null;
+        }
+        checkSeekOrder(seekColumns);
+
+        // 从id开始向前逐列展开: c1 >= ? AND (c1 > ? OR (c2 >= ? AND (c2 > ? OR ... id > ?)))
+        int last = seekColumns.length - 1;
+        WhereBuilder seek = WhereBuilder.b(seekColumns[last],
+                isDescOrder(seekColumns[last]) ? "<" : ">", seekValues[last]);
+        for (int i = last - 1; i >= 0; i--) {
+            String column = seekColumns[i];
+            boolean desc = isDescOrder(column);
+            seek = WhereBuilder.b(column, desc ? "<=" : ">=", seekValues[i])
+                    .and(WhereBuilder.b(column, desc ? "<" : ">", seekValues[i]).or(seek));
+        }
+
+        if (!hasWhere) {
+            return seek;
+        }
+        return WhereBuilder.b().and(whereBuilder).and(seek);
+    }
+
+    private boolean isDescOrder(String columnName) {
+        if (orderByList != null) {
+            for (OrderBy orderBy : orderByList) {
+                if (orderBy.getColumnName().equals(columnName)) {
+                    return orderBy.isDesc();
+                }
+            }
+        }
+        return false;
+    }
+
+    private Selector<T> copy() {
+        Selector<T> result = new Selector<T>(table);
+        result.whereBuilder = whereBuilder;
+        if (orderByList != null) {
+            result.orderByList = new ArrayList<OrderBy>(orderByList);
+        }
+        result.limit = limit;
+        result.offset = offset;
+        result.seekColumns = seekColumns;
+        result.seekValues = seekValues;
+        result.idLookupValue = idLookupValue;
+        result.projection = projection;
+        result.relations = relations;
+        return result;
+    }
+
+    /**
+     * @return 决定行顺序的排序列: orderBy到id为止, 没有orderBy(id)时追加id
+     */
+    private String[] getSeekOrderColumns() {
+        String idName = table.getId().getName();
+        ArrayList<String> columns = new ArrayList<String>(orderByList == null ? 1 : orderByList.size() + 1);
+        if (orderByList != null) {
+            for (OrderBy orderBy : orderByList) {
+                columns.add(orderBy.getColumnName());
+                if (orderBy.getColumnName().equals(idName)) {
+                    return columns.toArray(new String[columns.size()]);
+                }
+            }
+        }
+        columns.add(idName);
+        return columns.toArray(new String[columns.size()]);
+    }
+
+    /**
+     * keyset条件必须覆盖id之前的所有排序列, 否则在前面的列相同的行之间会跳过或重复
+     */
+    private void checkSeekOrder(String[] columns) {
+        String[] orderColumns = getSeekOrderColumns();
+        if (!Arrays.equals(orderColumns, columns)) {
+            throw new IllegalStateException("keyset columns " + Arrays.toString(columns)
+                    + " do not match the order " + Arrays.toString(orderColumns));
+        }
+    }
+
+    /**
+     * 保证排序包含columnName和作为tie-break的id
+     */
+    private void ensureSeekOrder(String columnName) {
+        boolean hasColumn = false;
+        boolean hasId = false;
+        String idName = table.getId().getName();
+        if (orderByList != null) {
+            for (OrderBy orderBy : orderByList) {
+                hasColumn |= orderBy.getColumnName().equals(columnName);
+                hasId |= orderBy.getColumnName().equals(idName);
+            }
+        }
+        if (!hasColumn) {
+            orderBy(columnName);
+        }
+        if (!hasId) {
+            orderBy(idName, isDescOrder(columnName));
+        }
+    }
+
+    private String buildSql(String where) {
         StringBuilder result = new StringBuilder();
         result.append("SELECT ");
-        result.append("*");
+        if (projection == null) {
+            result.append(table.getSelectColumns());
+        } else {
+            String idName = table.getId().getName();
+            if (!containsColumn(projection, idName)) {
+                result.append("\"").append(idName).append("\"").append(',');
+            }
+            for (String column : projection) {
+                result.append("\"").append(column).append("\"").append(',');
+            }
+            result.deleteCharAt(result.length() - 1);
+        }
         result.append(" FROM ").append("\"").append(table.getName()).append("\"");
-        if (whereBuilder != null && whereBuilder.getWhereItemSize() > 0) {
-            result.append(" WHERE ").append(whereBuilder.toString());
+        if (where != null) {
+            result.append(" WHERE ").append(where);
         }
         if (orderByList != null && orderByList.size() > 0) {
             result.append(" ORDER BY ");
@@ -215,6 +788,35 @@ public final class Selector<T> {
         return result.toString();
     }
 
+    /**
+     * 有projection时补上读取关联需要的本表列
+     */
+    private void ensureRelationColumns() throws DbException {
+        if (relations == null || projection == null) return;
+        for (String name : relations) {
+            String columnName = table.getRelation(name).getLocalColumnName();
+            if (!containsColumn(projection, columnName)) {
+                String[] columns = Arrays.copyOf(projection, projection.length + 1);
+                columns[projection.length] = columnName;
+                projection = columns;
+            }
+        }
+    }
+
+    private void loadRelations(List<T> entities) throws DbException {
+        if (relations == null || entities == null || entities.isEmpty()) return;
+        for (String name : relations) {
+            table.getRelation(name).load(entities);
+        }
+    }
+
+    private static boolean containsColumn(String[] columns, String columnName) {
+        for (String column : columns) {
+            if (column.equals(columnName)) return true;
+        }
+        return false;
+    }
+
     public static class OrderBy {
         private String columnName;
         private boolean desc;
@@ -228,6 +830,14 @@ public final class Selector<T> {
             this.desc = desc;
         }
 
+        public String getColumnName() {
+            return columnName;
+        }
+
+        public boolean isDesc() {
+            return desc;
+        }
+
         @Override
         public String toString() {
             return "\"" + columnName + "\"" + (desc ? " DESC" : " ASC");
@@ -0,0 +1,135 @@
+package com.jack.cache.db.sqlite;
+
+import android.database.sqlite.SQLiteProgram;
+
+import com.jack.cache.data.KeyValue;
+import com.jack.cache.db.converter.ColumnConverter;
+import com.jack.cache.db.converter.ColumnConverterFactory;
+
+/**
+ * 按列的数据库类型把已转换的值(ColumnConverter#fieldValue2DbValue的结果)绑定到statement.
+ * 每列的binder在建立TableEntity时确定(ColumnEntity#getColumnBinder), 绑定时不再查找ColumnConverter.
+ */
+public abstract class ColumnBinder {
+
+    public static final ColumnBinder INTEGER = new ColumnBinder() {
+        @Override
+        protected void bindNonNull(SQLiteProgram statement, int index, Object value) {
+            statement.bindLong(index, ((Number) value).longValue());
+        }
+
+        /**
+         * 只接受整数, 否则如条件age > 1.5会被截断为age > 1; 其余的值按值的类型绑定
+         */
+        @Override
+        public boolean accepts(Object value) {
+            return value == null || value instanceof Long || value instanceof Integer
+                    || value instanceof Short || value instanceof Byte;
+        }
+    };
+
+    public static final ColumnBinder REAL = new ColumnBinder() {
+        @Override
+        protected void bindNonNull(SQLiteProgram statement, int index, Object value) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        }
+
+        @Override
+        public boolean accepts(Object value) {
+            return value == null || value instanceof Number;
+        }
+    };
+
+    public static final ColumnBinder TEXT = new ColumnBinder() {
+        @Override
+        protected void bindNonNull(SQLiteProgram statement, int index, Object value) {
+            statement.bindString(index, value.toString());
+        }
+
+        @Override
+        public boolean accepts(Object value) {
+            return !(value instanceof byte[]);
+        }
+    };
+
+    public static final ColumnBinder BLOB = new ColumnBinder() {
+        @Override
+        protected void bindNonNull(SQLiteProgram statement, int index, Object value) {
+            statement.bindBlob(index, (byte[]) value);
+        }
+
+        @Override
+        public boolean accepts(Object value) {
+            return value == null || value instanceof byte[];
+        }
+    };
+
+    private ColumnBinder() {
+    }
+
+    public static ColumnBinder of(ColumnDbType type) {
+        switch (type) {
+            case INTEGER:
+                return INTEGER;
+            case REAL:
+                return REAL;
+            case BLOB:
+                return BLOB;
+            default:
+                return TEXT;
+        }
+    }
+
+    /**
+     * 列类型未知时按值的类型选择, 与按值的类型查找ColumnConverter的结果一致,
+     * 常见类型不经过ColumnConverterFactory.
+     *
+     * @param value 已转换的数据库值, 不为null
+     */
+    public static ColumnBinder forValue(Object value) {
+        if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            return INTEGER;
+        } else if (value instanceof String) {
+            return TEXT;
+        } else if (value instanceof Double || value instanceof Float) {
+            return REAL;
+        } else if (value instanceof byte[]) {
+            return BLOB;
+        }
+        ColumnConverter converter = ColumnConverterFactory.getColumnConverter(value.getClass());
+        return of(converter.getColumnDbType());
+    }
+
+    /**
+     * @param index 从1开始
+     * @param value 已转换的数据库值, null时bindNull
+     */
+    public final void bind(SQLiteProgram statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            bindNonNull(statement, index, value);
+        }
+    }
+
+    /**
+     * @return 该值能否用此binder绑定(如条件中对INTEGER列使用LIKE '%x%'时值为String)
+     */
+    public abstract boolean accepts(Object value);
+
+    protected abstract void bindNonNull(SQLiteProgram statement, int index, Object value);
+
+    /**
+     * 带binder的参数, value为已转换的数据库值.
+     * SqlInfo绑定时直接使用其binder, 不再转换和查找ColumnConverter.
+     */
+    public static final class Arg extends KeyValue {
+        public final ColumnBinder binder;
+
+        public Arg(String key, Object value, ColumnBinder binder) {
+            super(key, value);
+            this.binder = binder;
+        }
+    }
+}
@@ -16,12 +16,13 @@
 package com.jack.cache.db.sqlite;
 
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteProgram;
 import android.database.sqlite.SQLiteStatement;
 
 import com.jack.cache.data.KeyValue;
-import com.jack.cache.db.converter.ColumnConverter;
-import com.jack.cache.db.converter.ColumnConverterFactory;
+import com.jack.cache.db.table.ColumnEntity;
 import com.jack.cache.db.table.ColumnUtils;
+import com.jack.cache.db.table.TableEntity;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -55,44 +56,71 @@ public final class SqlInfo {
 
     public void addBindArgs(List<KeyValue> bindArgs) {
         if (this.bindArgs == null) {
-            this.bindArgs = bindArgs;
+            this.bindArgs = new ArrayList<KeyValue>(bindArgs);
         } else {
             this.bindArgs.addAll(bindArgs);
         }
     }
 
+    /**
+     * 添加table上的条件参数, 参数名是table的列名且值的类型相符时使用该列的binder绑定.
+     *
+     * @param table
+     * @param bindArgs 已转换的数据库值, 如WhereBuilder#getBindArgs()
+     */
+    public void addBindArgs(TableEntity<?> table, List<KeyValue> bindArgs) {
+        if (this.bindArgs == null) {
+            this.bindArgs = new ArrayList<KeyValue>(bindArgs.size());
+        }
+        for (KeyValue kv : bindArgs) {
+            ColumnEntity column = kv.key == null ? null : table.getColumnMap().get(kv.key);
+            if (column != null && column.getColumnBinder().accepts(kv.value)) {
+                this.bindArgs.add(new ColumnBinder.Arg(kv.key, kv.value, column.getColumnBinder()));
+            } else {
+                this.bindArgs.add(kv);
+            }
+        }
+    }
+
     public SQLiteStatement buildStatement(SQLiteDatabase database) {
         SQLiteStatement result = database.compileStatement(sql);
+        bindArgs(result);
+        return result;
+    }
+
+    /**
+     * 绑定参数到已编译的statement或query, 可用于缓存中复用的statement.
+     *
+     * @param statement
+     */
+    public void bindArgs(SQLiteProgram statement) {
         if (bindArgs != null) {
             for (int i = 1; i < bindArgs.size() + 1; i++) {
                 KeyValue kv = bindArgs.get(i - 1);
-                Object value = ColumnUtils.convert2DbValueIfNeeded(kv.value);
-                if (value == null) {
-                    result.bindNull(i);
+                if (kv instanceof ColumnBinder.Arg) {
+                    ((ColumnBinder.Arg) kv).binder.bind(statement, i, kv.value);
                 } else {
-                    ColumnConverter converter = ColumnConverterFactory.getColumnConverter(value.getClass());
-                    ColumnDbType type = converter.getColumnDbType();
-                    switch (type) {
-                        case INTEGER:
-                            result.bindLong(i, ((Number) value).longValue());
-                            break;
-                        case REAL:
-                            result.bindDouble(i, ((Number) value).doubleValue());
-                            break;
-                        case TEXT:
-                            result.bindString(i, value.toString());
-                            break;
-                        case BLOB:
-                            result.bindBlob(i, (byte[]) value);
-                            break;
-                        default:
-                            result.bindNull(i);
-                            break;
-                    } // end switch
+                    Object value = ColumnUtils.convert2DbValueIfNeeded(kv.value);
+                    if (value == null) {
+                        statement.bindNull(i);
+                    } else {
+                        ColumnBinder.forValue(value).bindNonNull(statement, i, value);
+                    }
                 }
             }
         }
-        return result;
+    }
+
+    /**
+     * 按数据库类型绑定一个已转换的数据库值
+     *
+     * @param statement
+     * @param index     从1开始
+     * @param value     ColumnConverter#fieldValue2DbValue的结果
+     * @param type
+     */
+    public static void bindValue(SQLiteProgram statement, int index, Object value, ColumnDbType type) {
+        ColumnBinder.of(type).bind(statement, index, value);
     }
 
     public Object[] getBindArgs() {
@@ -100,7 +128,7 @@ public final class SqlInfo {
         if (bindArgs != null) {
             result = new Object[bindArgs.size()];
             for (int i = 0; i < bindArgs.size(); i++) {
-                result[i] = ColumnUtils.convert2DbValueIfNeeded(bindArgs.get(i).value);
+                result[i] = getDbValue(bindArgs.get(i));
             }
         }
         return result;
@@ -111,10 +139,17 @@ public final class SqlInfo {
         if (bindArgs != null) {
             result = new String[bindArgs.size()];
             for (int i = 0; i < bindArgs.size(); i++) {
-                Object value = ColumnUtils.convert2DbValueIfNeeded(bindArgs.get(i).value);
+                Object value = getDbValue(bindArgs.get(i));
                 result[i] = value == null ? null : value.toString();
             }
         }
         return result;
     }
+
+    private static Object getDbValue(KeyValue kv) {
+        if (kv instanceof ColumnBinder.Arg) {
+            return kv.value;
+        }
+        return ColumnUtils.convert2DbValueIfNeeded(kv.value);
+    }
 }
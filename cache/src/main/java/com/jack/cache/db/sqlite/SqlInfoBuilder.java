@@ -16,16 +16,25 @@
 package com.jack.cache.db.sqlite;
 
 
+import android.os.Build;
+import android.text.TextUtils;
+
+import com.jack.cache.annotation.Index;
+import com.jack.cache.annotation.Indexes;
 import com.jack.cache.data.KeyValue;
 import com.jack.cache.db.table.ColumnEntity;
+import com.jack.cache.db.table.ColumnUtils;
 import com.jack.cache.db.table.TableEntity;
 import com.jack.cache.exception.DbException;
+import com.jack.executor.utils.LogUtil;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -35,6 +44,11 @@ public final class SqlInfoBuilder {
 
     private static final ConcurrentHashMap<TableEntity<?>, String> INSERT_SQL_CACHE = new ConcurrentHashMap<TableEntity<?>, String>();
     private static final ConcurrentHashMap<TableEntity<?>, String> REPLACE_SQL_CACHE = new ConcurrentHashMap<TableEntity<?>, String>();
+    /**
+     * value为空字符串时表示该表不能使用upsert
+     */
+    private static final ConcurrentHashMap<TableEntity<?>, String> UPSERT_SQL_CACHE = new ConcurrentHashMap<TableEntity<?>, String>();
+    private static final ConcurrentHashMap<TableEntity<?>, String> DELETE_SQL_CACHE = new ConcurrentHashMap<TableEntity<?>, String>();
 
     private SqlInfoBuilder() {
     }
@@ -117,24 +131,98 @@ public final class SqlInfoBuilder {
         return result;
     }
 
-    //*********************************************** delete sql ***********************************************
+    //*********************************************** upsert sql ***********************************************
+
+    /**
+     * INSERT ... ON CONFLICT(id) DO UPDATE, 需要SQLite 3.24.
+     * 与REPLACE不同, 已存在的行原地更新, 不会先删除再插入.
+     *
+     * @return 除id外还有唯一约束的表返回null(REPLACE会删除与之冲突的行, upsert会报错), 此时应使用REPLACE
+     */
+    public static SqlInfo buildUpsertSqlInfo(TableEntity<?> table, Object entity) throws DbException {
+
+        String sql = UPSERT_SQL_CACHE.get(table);
+        if (sql == null) {
+            sql = hasUniqueConstraint(table) ? "" : buildUpsertSql(table);
+            UPSERT_SQL_CACHE.put(table, sql);
+        }
+        if (sql.length() == 0) return null;
+
+        List<KeyValue> keyValueList = entity2KeyValueList(table, entity);
+        if (keyValueList.size() == 0) return null;
 
-    public static SqlInfo buildDeleteSqlInfo(TableEntity<?> table, Object entity) throws DbException {
         SqlInfo result = new SqlInfo();
+        result.setSql(sql);
+        result.addBindArgs(keyValueList);
+        return result;
+    }
 
+    private static String buildUpsertSql(TableEntity<?> table) {
+        ColumnEntity id = table.getId();
+        ColumnEntity[] columns = table.getInsertColumns();
+        if (columns.length == 0) return "";
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("INSERT INTO ");
+        builder.append("\"").append(table.getName()).append("\"");
+        builder.append(" (");
+        for (ColumnEntity column : columns) {
+            builder.append("\"").append(column.getName()).append("\"").append(',');
+        }
+        builder.deleteCharAt(builder.length() - 1);
+        builder.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            builder.append("?,");
+        }
+        builder.deleteCharAt(builder.length() - 1);
+        builder.append(") ON CONFLICT (\"").append(id.getName()).append("\") DO ");
+
+        boolean hasUpdateColumn = false;
+        for (ColumnEntity column : columns) {
+            if (column != id) {
+                if (!hasUpdateColumn) {
+                    builder.append("UPDATE SET ");
+                    hasUpdateColumn = true;
+                }
+                builder.append("\"").append(column.getName()).append("\"")
+                        .append("=excluded.")
+                        .append("\"").append(column.getName()).append("\"").append(',');
+            }
+        }
+        if (hasUpdateColumn) {
+            builder.deleteCharAt(builder.length() - 1);
+        } else {
+            builder.append("NOTHING");
+        }
+        return builder.toString();
+    }
+
+    private static boolean hasUniqueConstraint(TableEntity<?> table) {
+        ColumnEntity id = table.getId();
+        for (ColumnEntity column : table.getColumnMap().values()) {
+            if (column != id && column.getProperty() != null
+                    && column.getProperty().toUpperCase(Locale.US).contains("UNIQUE")) {
+                return true;
+            }
+        }
+        for (SqlInfo sqlInfo : buildCreateIndexSqlInfos(table)) {
+            if (sqlInfo.getSql().startsWith("CREATE UNIQUE")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //*********************************************** delete sql ***********************************************
+
+    public static SqlInfo buildDeleteSqlInfo(TableEntity<?> table, Object entity) throws DbException {
         ColumnEntity id = table.getId();
         Object idValue = id.getColumnValue(entity);
 
         if (idValue == null) {
             throw new DbException("this entity[" + table.getEntityType() + "]'s id value is null");
         }
-        StringBuilder builder = new StringBuilder("DELETE FROM ");
-        builder.append("\"").append(table.getName()).append("\"");
-        builder.append(" WHERE ").append(WhereBuilder.b(id.getName(), "=", idValue));
-
-        result.setSql(builder.toString());
-
-        return result;
+        return buildDeleteSqlInfoById(table, idValue);
     }
 
     public static SqlInfo buildDeleteSqlInfoById(TableEntity<?> table, Object idValue) throws DbException {
@@ -145,39 +233,62 @@ public final class SqlInfoBuilder {
         if (idValue == null) {
             throw new DbException("this entity[" + table.getEntityType() + "]'s id value is null");
         }
-        StringBuilder builder = new StringBuilder("DELETE FROM ");
-        builder.append("\"").append(table.getName()).append("\"");
-        builder.append(" WHERE ").append(WhereBuilder.b(id.getName(), "=", idValue));
+        String sql = DELETE_SQL_CACHE.get(table);
+        if (sql == null) {
+            StringBuilder builder = new StringBuilder("DELETE FROM ");
+            builder.append("\"").append(table.getName()).append("\"");
+            builder.append(" WHERE ").append("\"").append(id.getName()).append("\"").append("=?");
+            sql = builder.toString();
+            DELETE_SQL_CACHE.put(table, sql);
+        }
 
-        result.setSql(builder.toString());
+        result.setSql(sql);
+        result.addBindArg(idArg(id, idValue));
 
         return result;
     }
 
     public static SqlInfo buildDeleteSqlInfo(TableEntity<?> table, WhereBuilder whereBuilder) throws DbException {
+        SqlInfo result = new SqlInfo();
         StringBuilder builder = new StringBuilder("DELETE FROM ");
         builder.append("\"").append(table.getName()).append("\"");
 
         if (whereBuilder != null && whereBuilder.getWhereItemSize() > 0) {
-            builder.append(" WHERE ").append(whereBuilder.toString());
+            builder.append(" WHERE ").append(whereBuilder.getSql());
+            result.addBindArgs(table, whereBuilder.getBindArgs());
         }
 
-        return new SqlInfo(builder.toString());
+        result.setSql(builder.toString());
+        return result;
     }
 
     //*********************************************** update sql ***********************************************
 
     public static SqlInfo buildUpdateSqlInfo(TableEntity<?> table, Object entity, String... updateColumnNames) throws DbException {
 
-        List<KeyValue> keyValueList = entity2KeyValueList(table, entity);
-        if (keyValueList.size() == 0) return null;
-
         HashSet<String> updateColumnNameSet = null;
         if (updateColumnNames != null && updateColumnNames.length > 0) {
             updateColumnNameSet = new HashSet<String>(updateColumnNames.length);
             Collections.addAll(updateColumnNameSet, updateColumnNames);
         }
 
+        // 只读取要更新的列, 避免触发延迟加载列的读取
+        List<KeyValue> keyValueList;
+        if (updateColumnNameSet == null) {
+            keyValueList = entity2KeyValueList(table, entity);
+        } else {
+            keyValueList = new ArrayList<KeyValue>(updateColumnNameSet.size());
+            for (ColumnEntity column : table.getColumnMap().values()) {
+                if (updateColumnNameSet.contains(column.getName())) {
+                    KeyValue kv = column2KeyValue(entity, column);
+                    if (kv != null) {
+                        keyValueList.add(kv);
+                    }
+                }
+            }
+        }
+        if (keyValueList.size() == 0) return null;
+
         ColumnEntity id = table.getId();
         Object idValue = id.getColumnValue(entity);
 
@@ -196,7 +307,8 @@ public final class SqlInfoBuilder {
             }
         }
         builder.deleteCharAt(builder.length() - 1);
-        builder.append(" WHERE ").append(WhereBuilder.b(id.getName(), "=", idValue));
+        builder.append(" WHERE ").append("\"").append(id.getName()).append("\"").append("=?");
+        result.addBindArg(idArg(id, idValue));
 
         result.setSql(builder.toString());
         return result;
@@ -210,19 +322,80 @@ public final class SqlInfoBuilder {
         StringBuilder builder = new StringBuilder("UPDATE ");
         builder.append("\"").append(table.getName()).append("\"");
         builder.append(" SET ");
+        List<KeyValue> setArgs = new ArrayList<KeyValue>(nameValuePairs.length);
         for (KeyValue kv : nameValuePairs) {
             builder.append("\"").append(kv.key).append("\"").append("=?,");
-            result.addBindArg(kv);
+            setArgs.add(new KeyValue(kv.key, ColumnUtils.convert2DbValueIfNeeded(kv.value)));
         }
+        result.addBindArgs(table, setArgs);
         builder.deleteCharAt(builder.length() - 1);
         if (whereBuilder != null && whereBuilder.getWhereItemSize() > 0) {
-            builder.append(" WHERE ").append(whereBuilder.toString());
+            builder.append(" WHERE ").append(whereBuilder.getSql());
+            result.addBindArgs(table, whereBuilder.getBindArgs());
         }
 
         result.setSql(builder.toString());
         return result;
     }
 
+    //*********************************************** bulk sql ***********************************************
+
+    /**
+     * 多行VALUES的insert/replace语句, 列顺序同columns.
+     */
+    public static String buildBulkInsertSql(TableEntity<?> table, ColumnEntity[] columns, int rowCount, boolean replace) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(replace ? "REPLACE INTO " : "INSERT INTO ");
+        builder.append("\"").append(table.getName()).append("\"");
+        builder.append(" (");
+        for (ColumnEntity column : columns) {
+            builder.append("\"").append(column.getName()).append("\"").append(',');
+        }
+        builder.deleteCharAt(builder.length() - 1);
+        builder.append(") VALUES ");
+
+        StringBuilder rowBuilder = new StringBuilder("(");
+        for (int i = 0; i < columns.length; i++) {
+            rowBuilder.append("?,");
+        }
+        rowBuilder.deleteCharAt(rowBuilder.length() - 1);
+        rowBuilder.append(")");
+        String row = rowBuilder.toString();
+
+        for (int i = 0; i < rowCount; i++) {
+            builder.append(row).append(',');
+        }
+        builder.deleteCharAt(builder.length() - 1);
+        return builder.toString();
+    }
+
+    public static String buildBulkDeleteSql(TableEntity<?> table, int idCount) {
+        StringBuilder builder = new StringBuilder("DELETE FROM ");
+        builder.append("\"").append(table.getName()).append("\"");
+        builder.append(" WHERE ").append("\"").append(table.getId().getName()).append("\"").append(" IN (");
+        for (int i = 0; i < idCount; i++) {
+            builder.append("?,");
+        }
+        builder.deleteCharAt(builder.length() - 1);
+        builder.append(")");
+        return builder.toString();
+    }
+
+    /**
+     * 按id更新指定列, 参数顺序: columns, id.
+     */
+    public static String buildBulkUpdateSql(TableEntity<?> table, ColumnEntity[] columns) {
+        StringBuilder builder = new StringBuilder("UPDATE ");
+        builder.append("\"").append(table.getName()).append("\"");
+        builder.append(" SET ");
+        for (ColumnEntity column : columns) {
+            builder.append("\"").append(column.getName()).append("\"").append("=?,");
+        }
+        builder.deleteCharAt(builder.length() - 1);
+        builder.append(" WHERE ").append("\"").append(table.getId().getName()).append("\"").append("=?");
+        return builder.toString();
+    }
+
     //*********************************************** others ***********************************************
 
     public static SqlInfo buildCreateTableSqlInfo(TableEntity<?> table) throws DbException {
@@ -253,6 +426,89 @@ public final class SqlInfoBuilder {
         return new SqlInfo(builder.toString());
     }
 
+    /**
+     * 根据@Index, @Indexes生成CREATE INDEX IF NOT EXISTS语句
+     */
+    public static List<SqlInfo> buildCreateIndexSqlInfos(TableEntity<?> table) {
+        return new ArrayList<SqlInfo>(buildCreateIndexSqlInfoMap(table).values());
+    }
+
+    /**
+     * 同{@link #buildCreateIndexSqlInfos(TableEntity)}, key: 索引名
+     */
+    public static LinkedHashMap<String, SqlInfo> buildCreateIndexSqlInfoMap(TableEntity<?> table) {
+        LinkedHashMap<String, SqlInfo> result = new LinkedHashMap<String, SqlInfo>();
+        Class<?> entityType = table.getEntityType();
+
+        Index classIndex = entityType.getAnnotation(Index.class);
+        if (classIndex != null) {
+            addCreateIndexSqlInfo(result, table, classIndex, null);
+        }
+        Indexes classIndexes = entityType.getAnnotation(Indexes.class);
+        if (classIndexes != null) {
+            for (Index index : classIndexes.value()) {
+                addCreateIndexSqlInfo(result, table, index, null);
+            }
+        }
+
+        for (ColumnEntity column : table.getColumnMap().values()) {
+            Index fieldIndex = column.getColumnField().getAnnotation(Index.class);
+            if (fieldIndex != null) {
+                addCreateIndexSqlInfo(result, table, fieldIndex, column.getName());
+            }
+        }
+        return result;
+    }
+
+    private static void addCreateIndexSqlInfo(LinkedHashMap<String, SqlInfo> result, TableEntity<?> table,
+                                              Index index, String firstColumn) {
+        List<String> columns = new ArrayList<String>();
+        if (firstColumn != null) {
+            columns.add(firstColumn);
+        }
+        Collections.addAll(columns, index.columns());
+        if (columns.isEmpty()) {
+            LogUtil.e("empty index on " + table.getName());
+            return;
+        }
+
+        String where = index.where();
+        if (!TextUtils.isEmpty(where) && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            // 部分索引需要SQLite 3.8.0
+            if (index.unique()) {
+                LogUtil.e("partial unique index not supported: " + table.getName() + columns);
+                return;
+            }
+            where = null;
+        }
+
+        String indexName = index.name();
+        if (TextUtils.isEmpty(indexName)) {
+            StringBuilder nameBuilder = new StringBuilder("index_").append(table.getName());
+            for (String column : columns) {
+                nameBuilder.append('_').append(column);
+            }
+            indexName = nameBuilder.toString();
+        }
+
+        StringBuilder builder = new StringBuilder("CREATE ");
+        if (index.unique()) {
+            builder.append("UNIQUE ");
+        }
+        builder.append("INDEX IF NOT EXISTS ");
+        builder.append("\"").append(indexName).append("\"");
+        builder.append(" ON ").append("\"").append(table.getName()).append("\"").append(" (");
+        for (String column : columns) {
+            builder.append("\"").append(column).append("\"").append(',');
+        }
+        builder.deleteCharAt(builder.length() - 1);
+        builder.append(")");
+        if (!TextUtils.isEmpty(where)) {
+            builder.append(" WHERE ").append(where);
+        }
+        result.put(indexName, new SqlInfo(builder.toString()));
+    }
+
     public static List<KeyValue> entity2KeyValueList(TableEntity<?> table, Object entity) {
 
         Collection<ColumnEntity> columns = table.getColumnMap().values();
@@ -267,13 +523,21 @@ public final class SqlInfoBuilder {
         return keyValueList;
     }
 
+    private static KeyValue idArg(ColumnEntity id, Object idValue) {
+        Object dbValue = ColumnUtils.convert2DbValueIfNeeded(idValue);
+        if (id.getColumnBinder().accepts(dbValue)) {
+            return new ColumnBinder.Arg(id.getName(), dbValue, id.getColumnBinder());
+        }
+        return new KeyValue(id.getName(), dbValue);
+    }
+
     private static KeyValue column2KeyValue(Object entity, ColumnEntity column) {
         if (column.isAutoId()) {
             return null;
         }
 
         String key = column.getName();
-        Object value = column.getFieldValue(entity);
-        return new KeyValue(key, value);
+        Object value = column.getColumnValue(entity);
+        return new ColumnBinder.Arg(key, value, column.getColumnBinder());
     }
 }
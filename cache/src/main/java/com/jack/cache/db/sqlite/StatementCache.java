@@ -0,0 +1,100 @@
+package com.jack.cache.db.sqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.jack.executor.utils.LogUtil;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 预编译SQLiteStatement的缓存池, 绑定在一个数据库连接上.
+ * 同一条sql的statement同一时间只借给一个线程, 并发借用时临时编译一个不入池的statement.
+ */
+public final class StatementCache {
+
+    public static final int DEFAULT_MAX_SIZE = 16;
+
+    private final SQLiteDatabase database;
+
+    /**
+     * key: sql
+     */
+    private final LinkedHashMap<String, SQLiteStatement> statementMap;
+    private final HashSet<SQLiteStatement> busySet = new HashSet<SQLiteStatement>();
+
+    public StatementCache(SQLiteDatabase database) {
+        this(database, DEFAULT_MAX_SIZE);
+    }
+
+    public StatementCache(SQLiteDatabase database, final int maxSize) {
+        this.database = database;
+        this.statementMap = new LinkedHashMap<String, SQLiteStatement>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                if (size() > maxSize) {
+                    SQLiteStatement statement = eldest.getValue();
+                    if (!busySet.contains(statement)) {
+                        releaseQuietly(statement);
+                    } // else: released by release(...)
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 借出一个编译好的statement, 用完后必须调用{@link #release(String, SQLiteStatement)}.
+     */
+    public synchronized SQLiteStatement acquire(String sql) {
+        SQLiteStatement statement = statementMap.get(sql);
+        if (statement == null) {
+            statement = database.compileStatement(sql);
+            statementMap.put(sql, statement);
+        } else if (busySet.contains(statement)) {
+            // 正被其他线程使用, 不等待, 临时编译一个
+            return database.compileStatement(sql);
+        }
+        busySet.add(statement);
+        return statement;
+    }
+
+    public synchronized void release(String sql, SQLiteStatement statement) {
+        if (statement == null) return;
+        if (busySet.remove(statement) && statementMap.get(sql) == statement) {
+            statement.clearBindings();
+        } else { // 临时编译的或已被移出缓存
+            releaseQuietly(statement);
+        }
+    }
+
+    public synchronized int size() {
+        return statementMap.size();
+    }
+
+    /**
+     * 释放所有空闲的statement, 正在使用的会在归还时释放.
+     */
+    public synchronized void clear() {
+        Iterator<SQLiteStatement> iterator = statementMap.values().iterator();
+        while (iterator.hasNext()) {
+            SQLiteStatement statement = iterator.next();
+            if (!busySet.contains(statement)) {
+                releaseQuietly(statement);
+            }
+            iterator.remove();
+        }
+    }
+
+    private static void releaseQuietly(SQLiteStatement statement) {
+        try {
+            statement.releaseReference();
+        } catch (Throwable ex) {
+            LogUtil.e(ex.getMessage(), ex);
+        }
+    }
+}
@@ -17,6 +17,7 @@ package com.jack.cache.db.sqlite;
 
 import android.text.TextUtils;
 
+import com.jack.cache.data.KeyValue;
 import com.jack.cache.db.converter.ColumnConverterFactory;
 import com.jack.cache.db.table.ColumnUtils;
 
@@ -32,10 +33,18 @@ import java.util.List;
  */
 public class WhereBuilder {
 
+    /**
+     * 条件语句, 值用"?"占位
+     */
     private final List<String> whereItems;
+    /**
+     * key: columnName, value: 转换后的数据库值
+     */
+    private final List<KeyValue> bindArgs;
 
     private WhereBuilder() {
         this.whereItems = new ArrayList<String>();
+        this.bindArgs = new ArrayList<KeyValue>();
     }
 
     /**
@@ -77,12 +86,13 @@ public class WhereBuilder {
     /**
      * add AND condition
      *
-     * @param where expr("[AND] (" + where.toString() + ")")
+     * @param where expr("[AND] (" + where.getSql() + ")")
      * @return
      */
     public WhereBuilder and(WhereBuilder where) {
         String condition = whereItems.size() == 0 ? " " : "AND ";
-        return expr(condition + "(" + where.toString() + ")");
+        bindArgs.addAll(where.bindArgs);
+        return expr(condition + "(" + where.getSql() + ")");
     }
 
     /**
@@ -101,12 +111,13 @@ public class WhereBuilder {
     /**
      * add OR condition
      *
-     * @param where expr("[OR] (" + where.toString() + ")")
+     * @param where expr("[OR] (" + where.getSql() + ")")
      * @return
      */
     public WhereBuilder or(WhereBuilder where) {
         String condition = whereItems.size() == 0 ? " " : "OR ";
-        return expr(condition + "(" + where.toString() + ")");
+        bindArgs.addAll(where.bindArgs);
+        return expr(condition + "(" + where.getSql() + ")");
     }
 
     public WhereBuilder expr(String expr) {
@@ -118,8 +129,10 @@ public class WhereBuilder {
         return whereItems.size();
     }
 
-    @Override
-    public String toString() {
+    /**
+     * @return 值用"?"占位的条件语句, 参数见{@link #getBindArgs()}
+     */
+    public String getSql() {
         if (whereItems.size() == 0) {
             return "";
         }
@@ -130,6 +143,63 @@ public class WhereBuilder {
         return sb.toString();
     }
 
+    /**
+     * @return 与{@link #getSql()}中"?"顺序对应的参数
+     */
+    public List<KeyValue> getBindArgs() {
+        return bindArgs;
+    }
+
+    /**
+     * @return 参数直接写入sql的条件语句, 用于日志或拼接原始sql.
+     */
+    @Override
+    public String toString() {
+        String sql = getSql();
+        if (bindArgs.isEmpty()) {
+            return sql;
+        }
+
+        StringBuilder sb = new StringBuilder(sql.length() + bindArgs.size() * 8);
+        int argIndex = 0;
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+                sb.append(c);
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                sb.append(c);
+            } else if (c == '?' && argIndex < bindArgs.size()) {
+                appendLiteral(sb, bindArgs.get(argIndex++).value);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendLiteral(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("NULL");
+        } else if (ColumnDbType.TEXT.equals(ColumnConverterFactory.getDbColumnType(value.getClass()))) {
+            String valueStr = value.toString();
+            if (valueStr.indexOf('\'') != -1) { // convert single quotations
+                valueStr = valueStr.replace("'", "''");
+            }
+            sb.append("'").append(valueStr).append("'");
+        } else if (value instanceof byte[]) {
+            sb.append("X'");
+            for (byte b : (byte[]) value) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            sb.append("'");
+        } else {
+            sb.append(value);
+        }
+    }
+
     private void appendCondition(String conj, String columnName, String op, Object value) {
         StringBuilder builder = new StringBuilder();
 
@@ -165,50 +235,24 @@ public class WhereBuilder {
             builder.append(" ").append(op).append(" ");
 
             if ("IN".equalsIgnoreCase(op)) {
-                Iterable<?> items = null;
-                if (value instanceof Iterable) {
-                    items = (Iterable<?>) value;
-                } else if (value.getClass().isArray()) {
-                    int len = Array.getLength(value);
-                    List<Object> arrayList = new ArrayList<Object>(len);
-                    for (int i = 0; i < len; i++) {
-                        arrayList.add(Array.get(value, i));
-                    }
-                    items = arrayList;
-                }
+                Iterable<?> items = toIterable(value);
                 if (items != null) {
-                    StringBuilder inSb = new StringBuilder("(");
+                    builder.append("(");
+                    boolean empty = true;
                     for (Object item : items) {
-                        Object itemColValue = ColumnUtils.convert2DbValueIfNeeded(item);
-                        if (ColumnDbType.TEXT.equals(ColumnConverterFactory.getDbColumnType(itemColValue.getClass()))) {
-                            String valueStr = itemColValue.toString();
-                            if (valueStr.indexOf('\'') != -1) { // convert single quotations
-                                valueStr = valueStr.replace("'", "''");
-                            }
-                            inSb.append("'").append(valueStr).append("'");
-                        } else {
-                            inSb.append(itemColValue);
-                        }
-                        inSb.append(",");
+                        builder.append("?,");
+                        bindArgs.add(newBindArg(columnName, item));
+                        empty = false;
+                    }
+                    if (!empty) {
+                        builder.deleteCharAt(builder.length() - 1);
                     }
-                    inSb.deleteCharAt(inSb.length() - 1);
-                    inSb.append(")");
-                    builder.append(inSb.toString());
+                    builder.append(")");
                 } else {
                     throw new IllegalArgumentException("value must be an Array or an Iterable.");
                 }
             } else if ("BETWEEN".equalsIgnoreCase(op)) {
-                Iterable<?> items = null;
-                if (value instanceof Iterable) {
-                    items = (Iterable<?>) value;
-                } else if (value.getClass().isArray()) {
-                    int len = Array.getLength(value);
-                    List<Object> arrayList = new ArrayList<Object>(len);
-                    for (int i = 0; i < len; i++) {
-                        arrayList.add(Array.get(value, i));
-                    }
-                    items = arrayList;
-                }
+                Iterable<?> items = toIterable(value);
                 if (items != null) {
                     Iterator<?> iterator = items.iterator();
                     if (!iterator.hasNext())
@@ -218,42 +262,41 @@ public class WhereBuilder {
                         throw new IllegalArgumentException("value must have tow items.");
                     Object end = iterator.next();
 
-                    Object startColValue = ColumnUtils.convert2DbValueIfNeeded(start);
-                    Object endColValue = ColumnUtils.convert2DbValueIfNeeded(end);
-
-                    if (ColumnDbType.TEXT.equals(ColumnConverterFactory.getDbColumnType(startColValue.getClass()))) {
-                        String startStr = startColValue.toString();
-                        if (startStr.indexOf('\'') != -1) { // convert single quotations
-                            startStr = startStr.replace("'", "''");
-                        }
-                        String endStr = endColValue.toString();
-                        if (endStr.indexOf('\'') != -1) { // convert single quotations
-                            endStr = endStr.replace("'", "''");
-                        }
-                        builder.append("'").append(startStr).append("'");
-                        builder.append(" AND ");
-                        builder.append("'").append(endStr).append("'");
-                    } else {
-                        builder.append(startColValue);
-                        builder.append(" AND ");
-                        builder.append(endColValue);
-                    }
+                    builder.append("? AND ?");
+                    bindArgs.add(newBindArg(columnName, start));
+                    bindArgs.add(newBindArg(columnName, end));
                 } else {
                     throw new IllegalArgumentException("value must be an Array or an Iterable.");
                 }
             } else {
-                value = ColumnUtils.convert2DbValueIfNeeded(value);
-                if (ColumnDbType.TEXT.equals(ColumnConverterFactory.getDbColumnType(value.getClass()))) {
-                    String valueStr = value.toString();
-                    if (valueStr.indexOf('\'') != -1) { // convert single quotations
-                        valueStr = valueStr.replace("'", "''");
-                    }
-                    builder.append("'").append(valueStr).append("'");
-                } else {
-                    builder.append(value);
-                }
+                builder.append("?");
+                bindArgs.add(newBindArg(columnName, value));
             }
         }
         whereItems.add(builder.toString());
     }
+
+    /**
+     * 添加条件时转换并确定binder, 绑定时不再查找ColumnConverter
+     */
+    private static KeyValue newBindArg(String columnName, Object value) {
+        Object dbValue = ColumnUtils.convert2DbValueIfNeeded(value);
+        ColumnBinder binder = dbValue == null ? ColumnBinder.TEXT : ColumnBinder.forValue(dbValue);
+        return new ColumnBinder.Arg(columnName, dbValue, binder);
+    }
+
+    private static Iterable<?> toIterable(Object value) {
+        Iterable<?> items = null;
+        if (value instanceof Iterable) {
+            items = (Iterable<?>) value;
+        } else if (value.getClass().isArray()) {
+            int len = Array.getLength(value);
+            List<Object> arrayList = new ArrayList<Object>(len);
+            for (int i = 0; i < len; i++) {
+                arrayList.add(Array.get(value, i));
+            }
+            items = arrayList;
+        }
+        return items;
+    }
 }
@@ -16,10 +16,12 @@
 package com.jack.cache.db.table;
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
 
 import com.jack.cache.annotation.Column;
 import com.jack.cache.db.converter.ColumnConverter;
 import com.jack.cache.db.converter.ColumnConverterFactory;
+import com.jack.cache.db.sqlite.ColumnBinder;
 import com.jack.cache.db.sqlite.ColumnDbType;
 import com.jack.executor.utils.LogUtil;
 
@@ -32,12 +34,18 @@ public final class ColumnEntity {
     private final String property;
     private final boolean isId;
     private final boolean isAutoId;
+    private final boolean isLazy;
 
     protected final Method getMethod;
     protected final Method setMethod;
 
     protected final Field columnField;
     protected final ColumnConverter columnConverter;
+    private final ColumnBinder columnBinder;
+
+    private EntityAdapter adapter;
+    private int adapterSlot = -1;
+    private int index = -1;
 
     /* package */ ColumnEntity(Class<?> entityType, Field field, Column column) {
         field.setAccessible(true);
@@ -49,7 +57,9 @@ public final class ColumnEntity {
 
         Class<?> fieldType = field.getType();
         this.isAutoId = this.isId && column.autoGen() && ColumnUtils.isAutoIdType(fieldType);
+        this.isLazy = !this.isId && column.lazy();
         this.columnConverter = ColumnConverterFactory.getColumnConverter(fieldType);
+        this.columnBinder = ColumnBinder.of(columnConverter.getColumnDbType());
 
 
         this.getMethod = ColumnUtils.findGetMethod(entityType, field);
@@ -62,7 +72,13 @@ public final class ColumnEntity {
         }
     }
 
+    @SuppressWarnings("unchecked")
     public void setValueFromCursor(Object entity, Cursor cursor, int index) {
+        if (adapter != null) {
+            adapter.readValue(entity, cursor, index, adapterSlot);
+            return;
+        }
+
         Object value = columnConverter.getFieldValue(cursor, index);
         if (value == null) return;
 
@@ -81,6 +97,47 @@ public final class ColumnEntity {
         }
     }
 
+    /**
+     * 恢复为字段类型的默认值(null, 0或false), 复用实体读取下一行时使用.
+     */
+    public void resetValue(Object entity) {
+        Class<?> fieldType = columnField.getType();
+        Object value = null;
+        if (fieldType.isPrimitive()) {
+            if (boolean.class.equals(fieldType)) {
+                value = false;
+            } else if (char.class.equals(fieldType)) {
+                value = (char) 0;
+            } else if (byte.class.equals(fieldType)) {
+                value = (byte) 0;
+            } else if (short.class.equals(fieldType)) {
+                value = (short) 0;
+            } else if (int.class.equals(fieldType)) {
+                value = 0;
+            } else if (long.class.equals(fieldType)) {
+                value = 0L;
+            } else if (float.class.equals(fieldType)) {
+                value = 0f;
+            } else {
+                value = 0d;
+            }
+        }
+
+        if (setMethod != null) {
+            try {
+                setMethod.invoke(entity, value);
+            } catch (Throwable e) {
+                LogUtil.e(e.getMessage(), e);
+            }
+        } else {
+            try {
+                this.columnField.set(entity, value);
+            } catch (Throwable e) {
+                LogUtil.e(e.getMessage(), e);
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public Object getColumnValue(Object entity) {
         Object fieldValue = getFieldValue(entity);
@@ -90,7 +147,13 @@ public final class ColumnEntity {
         return columnConverter.fieldValue2DbValue(fieldValue);
     }
 
+    @SuppressWarnings("unchecked")
     public void setAutoIdValue(Object entity, long value) {
+        if (adapter != null) {
+            adapter.setAutoId(entity, value);
+            return;
+        }
+
         Object idValue = value;
         if (ColumnUtils.isInteger(columnField.getType())) {
             idValue = (int) value;
@@ -111,10 +174,26 @@ public final class ColumnEntity {
         }
     }
 
+    /**
+     * 将entity中该列的值绑定到statement
+     */
+    @SuppressWarnings("unchecked")
+    public void bindValue(SQLiteStatement statement, int index, Object entity) {
+        if (adapter != null) {
+            adapter.bindValue(statement, index, entity, adapterSlot);
+            return;
+        }
+        Object value = columnConverter.fieldValue2DbValue(getFieldValue(entity));
+        columnBinder.bind(statement, index, value);
+    }
+
+    @SuppressWarnings("unchecked")
     public Object getFieldValue(Object entity) {
         Object fieldValue = null;
         if (entity != null) {
-            if (getMethod != null) {
+            if (adapter != null) {
+                fieldValue = adapter.getValue(entity, adapterSlot);
+            } else if (getMethod != null) {
                 try {
                     fieldValue = getMethod.invoke(entity);
                 } catch (Throwable e) {
@@ -131,6 +210,43 @@ public final class ColumnEntity {
         return fieldValue;
     }
 
+    /**
+     * 修改跟踪用的数据库值, 延迟加载的列直接读字段, 不经过getter(避免触发加载)
+     */
+    @SuppressWarnings("unchecked")
+    /* package */ Object getTrackedValue(Object entity) {
+        Object fieldValue = null;
+        if (isLazy) {
+            try {
+                fieldValue = this.columnField.get(entity);
+            } catch (Throwable e) {
+                LogUtil.e(e.getMessage(), e);
+            }
+        } else {
+            fieldValue = getFieldValue(entity);
+        }
+        return columnConverter.fieldValue2DbValue(fieldValue);
+    }
+
+    /**
+     * @return 在TableEntity#getColumnMap()中的顺序
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /* package */ void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * 使用编译期生成的访问器代替反射
+     */
+    /* package */ void setAdapter(EntityAdapter<?> adapter, int slot) {
+        this.adapter = adapter;
+        this.adapterSlot = slot;
+    }
+
     public String getName() {
         return name;
     }
@@ -147,6 +263,10 @@ public final class ColumnEntity {
         return isAutoId;
     }
 
+    public boolean isLazy() {
+        return isLazy;
+    }
+
     public Field getColumnField() {
         return columnField;
     }
@@ -155,6 +275,13 @@ public final class ColumnEntity {
         return columnConverter;
     }
 
+    /**
+     * @return 按该列数据库类型绑定已转换值的binder
+     */
+    public ColumnBinder getColumnBinder() {
+        return columnBinder;
+    }
+
     public ColumnDbType getColumnDbType() {
         return columnConverter.getColumnDbType();
     }
@@ -1,16 +1,18 @@
 package com.jack.cache.db.table;
 
-import android.database.Cursor;
 import android.text.TextUtils;
 
 import com.jack.cache.DbManager;
 import com.jack.cache.db.sqlite.SqlInfo;
 import com.jack.cache.db.sqlite.SqlInfoBuilder;
 import com.jack.cache.exception.DbException;
-import com.jack.executor.utils.IOUtil;
 import com.jack.executor.utils.LogUtil;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * DbManager基类, 包含表结构的基本操作.
@@ -19,6 +21,7 @@ import java.util.HashMap;
 public abstract class DbBase implements DbManager {
 
     private final HashMap<Class<?>, TableEntity<?>> tableMap = new HashMap<Class<?>, TableEntity<?>>();
+    private final SchemaSnapshot schema = new SchemaSnapshot(this);
 
     @Override
     @SuppressWarnings("unchecked")
@@ -42,50 +45,48 @@ public abstract class DbBase implements DbManager {
     public void dropTable(Class<?> entityType) throws DbException {
         TableEntity<?> table = this.getTable(entityType);
         if (!table.tableIsExist()) return;
-        execNonQuery("DROP TABLE \"" + table.getName() + "\"");
+        table.releaseStatements();
+        execSchemaSql(new SqlInfo("DROP TABLE \"" + table.getName() + "\""));
+        schema.onTableDropped(table.getName());
         table.setCheckedDatabase(false);
         this.removeTable(entityType);
+        notifyTableChanged(table.getName());
     }
 
     @Override
     public void dropDb() throws DbException {
-        Cursor cursor = execQuery("SELECT name FROM sqlite_master WHERE type='table' AND name<>'sqlite_sequence'");
-        if (cursor != null) {
+        releaseTableStatements();
+        for (String tableName : schema.getTableNames()) {
             try {
-                while (cursor.moveToNext()) {
-                    try {
-                        String tableName = cursor.getString(0);
-                        execNonQuery("DROP TABLE " + tableName);
-                    } catch (Throwable e) {
-                        LogUtil.e(e.getMessage(), e);
-                    }
-                }
-
-                synchronized (tableMap) {
-                    for (TableEntity<?> table : tableMap.values()) {
-                        table.setCheckedDatabase(false);
-                    }
-                    tableMap.clear();
-                }
+                execSchemaSql(new SqlInfo("DROP TABLE \"" + tableName + "\""));
+                schema.onTableDropped(tableName);
             } catch (Throwable e) {
-                throw new DbException(e);
-            } finally {
-                IOUtil.closeQuietly(cursor);
+                LogUtil.e(e.getMessage(), e);
             }
         }
+
+        synchronized (tableMap) {
+            for (TableEntity<?> table : tableMap.values()) {
+                table.setCheckedDatabase(false);
+                table.invalidateEntityCache();
+            }
+            tableMap.clear();
+        }
+        notifyTableChanged(null);
     }
 
     @Override
     public void addColumn(Class<?> entityType, String column) throws DbException {
         TableEntity<?> table = this.getTable(entityType);
         ColumnEntity col = table.getColumnMap().get(column);
-        if (col != null) {
+        if (col != null && !schema.hasColumn(table.getName(), col.getName())) {
             StringBuilder builder = new StringBuilder();
             builder.append("ALTER TABLE ").append("\"").append(table.getName()).append("\"").
                     append(" ADD COLUMN ").append("\"").append(col.getName()).append("\"").
                     append(" ").append(col.getColumnDbType()).
                     append(" ").append(col.getProperty());
-            execNonQuery(builder.toString());
+            execSchemaSql(new SqlInfo(builder.toString()));
+            schema.onColumnAdded(table.getName(), col.getName());
         }
     }
 
@@ -94,18 +95,122 @@ public abstract class DbBase implements DbManager {
             synchronized (table.getClass()) {
                 if (!table.tableIsExist()) {
                     SqlInfo sqlInfo = SqlInfoBuilder.buildCreateTableSqlInfo(table);
-                    execNonQuery(sqlInfo);
+                    execSchemaSql(sqlInfo);
+                    schema.onTableCreated(table.getName());
                     String execAfterTableCreated = table.getOnCreated();
                     if (!TextUtils.isEmpty(execAfterTableCreated)) {
                         execNonQuery(execAfterTableCreated);
                     }
                     table.setCheckedDatabase(true);
+                    createIndexes(table);
                     TableCreateListener listener = this.getDaoConfig().getTableCreateListener();
                     if (listener != null) {
                         listener.onTableCreated(this, table);
                     }
                 }
             }
+        } else if (!table.isIndexCreated()) {
+            // 已存在的表(如升级前创建的)补建索引
+            synchronized (table.getClass()) {
+                if (!table.isIndexCreated()) {
+                    createIndexes(table);
+                }
+            }
+        }
+    }
+
+    private void createIndexes(TableEntity<?> table) {
+        String tableName = table.getName();
+        Set<String> existIndexes = Collections.emptySet();
+        try {
+            existIndexes = schema.getIndexNames(tableName);
+        } catch (Throwable ex) {
+            LogUtil.e(ex.getMessage(), ex);
+        }
+        for (Map.Entry<String, SqlInfo> entry : SqlInfoBuilder.buildCreateIndexSqlInfoMap(table).entrySet()) {
+            String indexName = entry.getKey();
+            if (existIndexes.contains(indexName)) continue;
+            try {
+                execSchemaSql(entry.getValue());
+                schema.onIndexCreated(tableName, indexName);
+            } catch (Throwable ex) {
+                LogUtil.e(ex.getMessage(), ex);
+            }
+        }
+        table.setIndexCreated(true);
+    }
+
+    /**
+     * 打开数据库后载入表结构快照, 之后判断表, 列, 索引是否存在不再查询数据库.
+     */
+    protected void loadSchema() {
+        try {
+            schema.load();
+        } catch (Throwable ex) {
+            LogUtil.e(ex.getMessage(), ex);
+        }
+    }
+
+    /*package*/ SchemaSnapshot getSchema() {
+        return schema;
+    }
+
+    /**
+     * 通知TableChangeListener表已变化
+     *
+     * @param tableName null: 未知的表
+     */
+    protected abstract void notifyTableChanged(String tableName);
+
+    /**
+     * 执行DbBase自己生成的DDL, 调用方负责更新表结构快照.
+     */
+    protected abstract void execSchemaSql(SqlInfo sqlInfo) throws DbException;
+
+    /**
+     * 执行了外部传入的sql后调用, 其中有DDL时表结构快照失效, 下次使用时重新载入.
+     */
+    protected void onSqlExecuted(String sql) {
+        if (sql == null) return;
+        String head = sql.trim();
+        if (head.length() > 6) {
+            head = head.substring(0, 6);
+        }
+        head = head.toUpperCase(Locale.US);
+        if (head.startsWith("CREATE") || head.startsWith("DROP") || head.startsWith("ALTER")) {
+            schema.invalidate();
+        }
+    }
+
+    /**
+     * 事务回滚后调用: 其中的建表, 建索引可能已撤销, 重新检查表结构.
+     */
+    protected void onTransactionRolledBack() {
+        schema.invalidate();
+        synchronized (tableMap) {
+            for (TableEntity<?> table : tableMap.values()) {
+                table.setCheckedDatabase(false);
+                table.setIndexCreated(false);
+            }
+        }
+    }
+
+    protected void releaseTableStatements() {
+        synchronized (tableMap) {
+            for (TableEntity<?> table : tableMap.values()) {
+                table.releaseStatements();
+            }
+        }
+    }
+
+    /**
+     * 执行了无法确定影响范围的sql时, 使所有表的实体缓存失效
+     */
+    protected void invalidateEntityCaches() {
+        synchronized (tableMap) {
+            for (TableEntity<?> table : tableMap.values()) {
+                table.invalidateEntityCache();
+            }
         }
     }
 
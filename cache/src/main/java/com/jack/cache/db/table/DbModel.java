@@ -15,65 +15,206 @@
 
 package com.jack.cache.db.table;
 
+import android.database.Cursor;
 import android.text.TextUtils;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 
+/**
+ * 一行查询结果, 按cursor的列类型保存: 整数和浮点数存为基本类型, 不再转换为字符串.
+ * 同一个查询的所有行共用一个{@link Columns}.
+ */
 public final class DbModel {
 
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_STRING = 3;
+    private static final byte TYPE_BLOB = 4;
+
+    private Columns columns;
+    private boolean sharedColumns;
+    private byte[] types;
+    private long[] longValues;
+    private double[] doubleValues;
+    /**
+     * String或byte[]
+     */
+    private Object[] objectValues;
+
+    public DbModel() {
+        this.columns = new Columns(new String[0]);
+        this.sharedColumns = false;
+        allocate(4);
+    }
+
     /**
-     * key: columnName
-     * value: valueStr
+     * 读取cursor的当前行
+     *
+     * @param columns 同一个cursor的所有行共用, {@link Columns#Columns(String[])}
      */
-    private HashMap<String, String> dataMap = new HashMap<String, String>();
+    public DbModel(Columns columns, Cursor cursor) {
+        this.columns = columns;
+        this.sharedColumns = true;
+        int count = columns.names.length;
+        allocate(count);
+        for (int i = 0; i < count; i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    types[i] = TYPE_LONG;
+                    longValues[i] = cursor.getLong(i);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    types[i] = TYPE_DOUBLE;
+                    doubleValues[i] = cursor.getDouble(i);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    types[i] = TYPE_STRING;
+                    objectValues[i] = cursor.getString(i);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    types[i] = TYPE_BLOB;
+                    objectValues[i] = cursor.getBlob(i);
+                    break;
+                default:
+                    types[i] = TYPE_NULL;
+                    break;
+            }
+        }
+    }
 
+    /**
+     * 浮点数按Double.toString格式化, 与SQLite转换的文本不完全相同(如1.0E10, 0.30000000000000004),
+     * 需要SQLite的格式时在查询中使用CAST(... AS TEXT).
+     */
     public String getString(String columnName) {
-        return dataMap.get(columnName);
+        int index = columns.indexOf(columnName);
+        if (index < 0) return null;
+        switch (types[index]) {
+            case TYPE_LONG:
+                return Long.toString(longValues[index]);
+            case TYPE_DOUBLE:
+                return Double.toString(doubleValues[index]);
+            case TYPE_STRING:
+                return (String) objectValues[index];
+            case TYPE_BLOB:
+                return new String((byte[]) objectValues[index]);
+            default:
+                return null;
+        }
     }
 
     public int getInt(String columnName) {
-        return Integer.valueOf(dataMap.get(columnName));
+        return (int) getLong(columnName);
     }
 
     public boolean getBoolean(String columnName) {
-        String value = dataMap.get(columnName);
-        if (value != null) {
-            return value.length() == 1 ? "1".equals(value) : Boolean.valueOf(value);
+        int index = columns.indexOf(columnName);
+        if (index < 0) return false;
+        switch (types[index]) {
+            case TYPE_LONG:
+                return longValues[index] == 1;
+            case TYPE_DOUBLE:
+                return doubleValues[index] == 1;
+            case TYPE_STRING:
+                String value = (String) objectValues[index];
+                return value.length() == 1 ? "1".equals(value) : Boolean.valueOf(value);
+            default:
+                return false;
         }
-        return false;
     }
 
     public double getDouble(String columnName) {
-        return Double.valueOf(dataMap.get(columnName));
+        int index = columns.indexOf(columnName);
+        switch (index < 0 ? TYPE_NULL : types[index]) {
+            case TYPE_LONG:
+                return longValues[index];
+            case TYPE_DOUBLE:
+                return doubleValues[index];
+            default:
+                return Double.valueOf(getString(columnName));
+        }
     }
 
     public float getFloat(String columnName) {
-        return Float.valueOf(dataMap.get(columnName));
+        return (float) getDouble(columnName);
     }
 
+    /**
+     * @throws NumberFormatException 值为null或不是数字
+     */
     public long getLong(String columnName) {
-        return Long.valueOf(dataMap.get(columnName));
+        int index = columns.indexOf(columnName);
+        switch (index < 0 ? TYPE_NULL : types[index]) {
+            case TYPE_LONG:
+                return longValues[index];
+            case TYPE_DOUBLE:
+                return (long) doubleValues[index];
+            default:
+                return Long.valueOf(getString(columnName));
+        }
     }
 
     public Date getDate(String columnName) {
-        long date = Long.valueOf(dataMap.get(columnName));
-        return new Date(date);
+        return new Date(getLong(columnName));
     }
 
     public java.sql.Date getSqlDate(String columnName) {
-        long date = Long.valueOf(dataMap.get(columnName));
-        return new java.sql.Date(date);
+        return new java.sql.Date(getLong(columnName));
+    }
+
+    public byte[] getBlob(String columnName) {
+        int index = columns.indexOf(columnName);
+        if (index < 0) return null;
+        switch (types[index]) {
+            case TYPE_BLOB:
+                return (byte[]) objectValues[index];
+            case TYPE_NULL:
+                return null;
+            default:
+                return getString(columnName).getBytes();
+        }
+    }
+
+    public boolean isNull(String columnName) {
+        int index = columns.indexOf(columnName);
+        return index < 0 || types[index] == TYPE_NULL;
     }
 
     public void add(String columnName, String valueStr) {
-        dataMap.put(columnName, valueStr);
+        int index = columns.indexOf(columnName);
+        if (index < 0) {
+            if (sharedColumns) { // 不修改其他行共用的列名
+                columns = new Columns(columns.names);
+                sharedColumns = false;
+            }
+            index = columns.add(columnName);
+            if (index >= types.length) {
+                int capacity = Math.max(index + 1, types.length * 2);
+                types = Arrays.copyOf(types, capacity);
+                longValues = Arrays.copyOf(longValues, capacity);
+                doubleValues = Arrays.copyOf(doubleValues, capacity);
+                objectValues = Arrays.copyOf(objectValues, capacity);
+            }
+        }
+        types[index] = valueStr == null ? TYPE_NULL : TYPE_STRING;
+        objectValues[index] = valueStr;
     }
 
     /**
-     * @return key: columnName
+     * 返回的是副本: 修改map不影响DbModel, 之后的add(...)也不会反映到已返回的map中,
+     * 需要修改时使用{@link #add(String, String)}.
+     *
+     * @return key: columnName, value: 值的字符串形式(见{@link #getString(String)}), 每次调用生成新的map
      */
     public HashMap<String, String> getDataMap() {
+        String[] names = columns.names;
+        HashMap<String, String> dataMap = new HashMap<String, String>(names.length * 2);
+        for (String name : names) {
+            dataMap.put(name, getString(name));
+        }
         return dataMap;
     }
 
@@ -82,6 +223,60 @@ public final class DbModel {
      * @return
      */
     public boolean isEmpty(String columnName) {
-        return TextUtils.isEmpty(dataMap.get(columnName));
+        int index = columns.indexOf(columnName);
+        if (index < 0) return true;
+        switch (types[index]) {
+            case TYPE_NULL:
+                return true;
+            case TYPE_STRING:
+                return TextUtils.isEmpty((String) objectValues[index]);
+            default:
+                return false;
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.types = new byte[capacity];
+        this.longValues = new long[capacity];
+        this.doubleValues = new double[capacity];
+        this.objectValues = new Object[capacity];
+    }
+
+    /**
+     * 一次查询结果的列名及其下标, 同一个查询的所有DbModel共用.
+     */
+    public static final class Columns {
+        private String[] names;
+        private final HashMap<String, Integer> indexMap;
+
+        public Columns(String[] names) {
+            this.names = names;
+            this.indexMap = new HashMap<String, Integer>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                if (!indexMap.containsKey(names[i])) { // 重名时同cursor.getColumnIndex取第一个
+                    indexMap.put(names[i], i);
+                }
+            }
+        }
+
+        public String[] getNames() {
+            return names;
+        }
+
+        /**
+         * @return 不存在时返回-1
+         */
+        public int indexOf(String columnName) {
+            Integer index = indexMap.get(columnName);
+            return index == null ? -1 : index;
+        }
+
+        private int add(String columnName) {
+            int index = names.length;
+            names = Arrays.copyOf(names, index + 1);
+            names[index] = columnName;
+            indexMap.put(columnName, index);
+            return index;
+        }
     }
 }
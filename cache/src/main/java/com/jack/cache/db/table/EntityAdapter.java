@@ -0,0 +1,45 @@
+package com.jack.cache.db.table;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * 实体类的列访问器, 由cache-compiler在编译期根据@Table/@Column生成,
+ * 直接调用字段或getter/setter读写列, 代替ColumnEntity中的反射.
+ * <p>
+ * 生成类与实体类同包, 类名: 实体类名(内部类的'$'换成'_') + "_EntityAdapter".
+ * 不存在时TableEntity回退到反射.
+ *
+ * @param <T> 实体类型
+ */
+public interface EntityAdapter<T> {
+
+    String SUFFIX = "_EntityAdapter";
+
+    /**
+     * @return 支持的列名, 下标即其余方法中的slot
+     */
+    String[] getColumnNames();
+
+    T newInstance();
+
+    /**
+     * @return 字段原值(未经ColumnConverter转换), 同ColumnEntity#getFieldValue
+     */
+    Object getValue(T entity, int slot);
+
+    /**
+     * 按列的数据库类型绑定到statement, 值为null时bindNull.
+     */
+    void bindValue(SQLiteStatement statement, int index, T entity, int slot);
+
+    /**
+     * 从cursor读取并赋值, 值为null时不赋值.
+     */
+    void readValue(T entity, Cursor cursor, int index, int slot);
+
+    /**
+     * 给自增id赋值
+     */
+    void setAutoId(T entity, long id);
+}
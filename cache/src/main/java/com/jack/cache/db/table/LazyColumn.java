@@ -0,0 +1,122 @@
+package com.jack.cache.db.table;
+
+import com.jack.cache.DbManager;
+import com.jack.cache.data.KeyValue;
+import com.jack.cache.db.sqlite.SqlInfo;
+import com.jack.cache.exception.DbException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 实体的一个延迟加载列(@Column(lazy = true))的句柄.
+ * 查询实体时不读取该列, 需要时调用{@link #load()}读取并赋给实体,
+ * 或用{@link #openReader(int)}分段读取很大的TEXT值.
+ */
+public final class LazyColumn {
+
+    private final DbManager db;
+    private final Object entity;
+    private final String columnName;
+    private boolean loaded = false;
+
+    public LazyColumn(DbManager db, Object entity, String columnName) {
+        this.db = db;
+        this.entity = entity;
+        this.columnName = columnName;
+    }
+
+    /**
+     * 读取列值并赋给实体, 只读取一次
+     */
+    public synchronized void load() throws DbException {
+        if (!loaded) {
+            db.loadLazyColumns(entity, columnName);
+            loaded = true;
+        }
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 使用substr()每次读取chunkSize个字符, 不把整个值读入内存.
+     */
+    public Reader openReader(int chunkSize) throws DbException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        TableEntity<?> table = db.getTable(entity.getClass());
+        ColumnEntity id = table.getId();
+        Object idValue = id.getColumnValue(entity);
+        if (idValue == null) {
+            throw new DbException("this entity[" + table.getEntityType() + "]'s id value is null");
+        }
+        String sql = "SELECT substr(\"" + columnName + "\",?,?) FROM \"" + table.getName() + "\""
+                + " WHERE \"" + id.getName() + "\"=?";
+        return new ChunkReader(db, sql, idValue, chunkSize);
+    }
+
+    private static final class ChunkReader extends Reader {
+        private final DbManager db;
+        private final String sql;
+        private final Object idValue;
+        private final int chunkSize;
+
+        private int position = 1; // substr()从1开始, 单位为字符
+        private String chunk;
+        private int chunkOffset;
+        private boolean eof = false;
+
+        ChunkReader(DbManager db, String sql, Object idValue, int chunkSize) {
+            this.db = db;
+            this.sql = sql;
+            this.idValue = idValue;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) return 0;
+            if (chunk == null || chunkOffset >= chunk.length()) {
+                if (eof) return -1;
+                String next = queryChunk();
+                if (next == null || next.isEmpty()) {
+                    eof = true;
+                    return -1;
+                }
+                // String.length()按UTF-16计, substr()按字符计
+                int charCount = next.codePointCount(0, next.length());
+                if (charCount < chunkSize) {
+                    eof = true;
+                }
+                position += charCount;
+                chunk = next;
+                chunkOffset = 0;
+            }
+            int count = Math.min(length, chunk.length() - chunkOffset);
+            chunk.getChars(chunkOffset, chunkOffset + count, buffer, offset);
+            chunkOffset += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            eof = true;
+            chunk = null;
+        }
+
+        private String queryChunk() throws IOException {
+            SqlInfo sqlInfo = new SqlInfo(sql);
+            sqlInfo.addBindArg(new KeyValue("start", position));
+            sqlInfo.addBindArg(new KeyValue("length", chunkSize));
+            sqlInfo.addBindArg(new KeyValue("id", idValue));
+            try {
+                return db.queryString(sqlInfo);
+            } catch (DbException ex) {
+                throw new IOException(ex.getMessage(), ex);
+            }
+        }
+    }
+}
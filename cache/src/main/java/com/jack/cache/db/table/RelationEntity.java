@@ -0,0 +1,158 @@
+package com.jack.cache.db.table;
+
+import com.jack.cache.annotation.ForeignKey;
+import com.jack.cache.annotation.OneToMany;
+import com.jack.cache.exception.DbException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 实体的关联字段(@OneToMany, @ForeignKey).
+ * {@link #load(List)}对一批实体只用IN(...)查询一次关联表(参数过多时分批), 在内存中按关联列赋值,
+ * 代替逐个实体查询.
+ */
+public final class RelationEntity {
+
+    /**
+     * 每条IN语句的最大参数数, SQLite默认上限为999
+     */
+    private static final int MAX_IN_ARGS = 500;
+
+    private final TableEntity<?> table;
+    private final Field field;
+    private final String column;
+    private final Class<?> targetType;
+    private final boolean oneToMany;
+
+    /* package */ RelationEntity(TableEntity<?> table, Field field, OneToMany oneToMany) {
+        field.setAccessible(true);
+        this.table = table;
+        this.field = field;
+        this.column = oneToMany.column();
+        this.oneToMany = true;
+        if (!List.class.isAssignableFrom(field.getType())) {
+            throw new IllegalArgumentException("@OneToMany field must be a List: " + field);
+        }
+        Class<?> target = oneToMany.target();
+        if (void.class.equals(target)) {
+            target = getListItemType(field);
+        }
+        if (target == null) {
+            throw new IllegalArgumentException("@OneToMany target type not found: " + field);
+        }
+        this.targetType = target;
+    }
+
+    /* package */ RelationEntity(TableEntity<?> table, Field field, ForeignKey foreignKey) {
+        field.setAccessible(true);
+        this.table = table;
+        this.field = field;
+        this.column = foreignKey.column();
+        this.oneToMany = false;
+        this.targetType = field.getType();
+    }
+
+    public String getName() {
+        return field.getName();
+    }
+
+    public Class<?> getTargetType() {
+        return targetType;
+    }
+
+    public boolean isOneToMany() {
+        return oneToMany;
+    }
+
+    /**
+     * @return 读取关联时需要的本表列名: 一对多为id, 多对一为外键列
+     */
+    public String getLocalColumnName() {
+        return oneToMany ? table.getId().getName() : column;
+    }
+
+    /**
+     * 批量读取entities的关联实体并赋给关联字段.
+     * 一对多时没有关联行的实体得到空List; 多对一时引用同一行的实体共享同一个关联实体.
+     */
+    public void load(List<?> entities) throws DbException {
+        if (entities == null || entities.isEmpty()) return;
+
+        TableEntity<?> targetTable = table.getDb().getTable(targetType);
+        ColumnEntity local = table.getColumnMap().get(getLocalColumnName());
+        ColumnEntity remote = oneToMany ? targetTable.getColumnMap().get(column) : targetTable.getId();
+        if (local == null || remote == null) {
+            throw new DbException("relation column not found: " + table.getName() + "." + getName());
+        }
+
+        Set<Object> keys = new LinkedHashSet<Object>();
+        for (Object entity : entities) {
+            Object key = relationKey(local, entity);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+
+        HashMap<Object, Object> related = new HashMap<Object, Object>();
+        if (!keys.isEmpty() && targetTable.tableIsExist()) {
+            List<Object> keyList = new ArrayList<Object>(keys);
+            for (int start = 0; start < keyList.size(); start += MAX_IN_ARGS) {
+                List<Object> batch = keyList.subList(start, Math.min(start + MAX_IN_ARGS, keyList.size()));
+                List<?> rows = targetTable.getDb().selector(targetType)
+                        .where(remote.getName(), "IN", batch).findAll();
+                if (rows == null) continue;
+                for (Object row : rows) {
+                    Object key = relationKey(remote, row);
+                    if (key == null) continue;
+                    if (oneToMany) {
+                        @SuppressWarnings("unchecked")
+                        List<Object> list = (List<Object>) related.get(key);
+                        if (list == null) {
+                            list = new ArrayList<Object>();
+                            related.put(key, list);
+                        }
+                        list.add(row);
+                    } else {
+                        related.put(key, row);
+                    }
+                }
+            }
+        }
+
+        try {
+            for (Object entity : entities) {
+                Object key = relationKey(local, entity);
+                Object value = key == null ? null : related.get(key);
+                if (oneToMany && value == null) {
+                    value = new ArrayList<Object>(0);
+                }
+                field.set(entity, value);
+            }
+        } catch (Throwable ex) {
+            throw new DbException(ex);
+        }
+    }
+
+    private static Object relationKey(ColumnEntity column, Object entity) {
+        Object value = column.getFieldValue(entity);
+        return value == null ? null : TableEntity.entityCacheKey(value);
+    }
+
+    private static Class<?> getListItemType(Field field) {
+        Type genericType = field.getGenericType();
+        if (genericType instanceof ParameterizedType) {
+            Type[] args = ((ParameterizedType) genericType).getActualTypeArguments();
+            if (args.length == 1 && args[0] instanceof Class) {
+                return (Class<?>) args[0];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,157 @@
+package com.jack.cache.db.table;
+
+import android.database.Cursor;
+
+import com.jack.cache.DbManager;
+import com.jack.cache.exception.DbException;
+import com.jack.executor.utils.IOUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 数据库结构(表, 索引, 列)的内存快照.
+ * 表和索引在首次使用时通过一次sqlite_master查询载入, 列在首次用到该表时通过PRAGMA table_info载入.
+ * DbBase执行的DDL直接更新快照; 执行了无法解析的DDL时整体失效, 下次使用时重新载入.
+ */
+/* package */ final class SchemaSnapshot {
+
+    private final DbManager db;
+
+    private boolean loaded = false;
+    private final HashSet<String> tables = new HashSet<String>();
+    /**
+     * key: 表名, value: 该表的索引名
+     */
+    private final HashMap<String, HashSet<String>> tableIndexes = new HashMap<String, HashSet<String>>();
+    /**
+     * key: 表名, value: 列名, 未载入的表没有key
+     */
+    private final HashMap<String, HashSet<String>> tableColumns = new HashMap<String, HashSet<String>>();
+
+    public SchemaSnapshot(DbManager db) {
+        this.db = db;
+    }
+
+    public synchronized void load() throws DbException {
+        if (loaded) return;
+        tables.clear();
+        tableIndexes.clear();
+        tableColumns.clear();
+        Cursor cursor = db.execQuery("SELECT type, name, tbl_name FROM sqlite_master WHERE type IN ('table','index')");
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    String type = cursor.getString(0);
+                    String name = cursor.getString(1);
+                    if ("table".equals(type)) {
+                        tables.add(name);
+                    } else {
+                        getIndexSet(cursor.getString(2)).add(name);
+                    }
+                }
+            } catch (Throwable e) {
+                throw new DbException(e);
+            } finally {
+                IOUtil.closeQuietly(cursor);
+            }
+        }
+        loaded = true;
+    }
+
+    public synchronized void invalidate() {
+        loaded = false;
+        tables.clear();
+        tableIndexes.clear();
+        tableColumns.clear();
+    }
+
+    public synchronized boolean hasTable(String tableName) throws DbException {
+        load();
+        return tables.contains(tableName);
+    }
+
+    /**
+     * @return 用户表的表名(不含sqlite_开头的内部表)
+     */
+    public synchronized List<String> getTableNames() throws DbException {
+        load();
+        List<String> result = new ArrayList<String>(tables.size());
+        for (String tableName : tables) {
+            if (!tableName.startsWith("sqlite_")) {
+                result.add(tableName);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return 该表已有的索引名, 不可修改
+     */
+    public synchronized Set<String> getIndexNames(String tableName) throws DbException {
+        load();
+        return new HashSet<String>(getIndexSet(tableName));
+    }
+
+    public synchronized boolean hasColumn(String tableName, String columnName) throws DbException {
+        load();
+        if (!tables.contains(tableName)) return false;
+        HashSet<String> columns = tableColumns.get(tableName);
+        if (columns == null) {
+            columns = new HashSet<String>();
+            Cursor cursor = db.execQuery("PRAGMA table_info(\"" + tableName + "\")");
+            if (cursor != null) {
+                try {
+                    int nameIndex = cursor.getColumnIndex("name");
+                    while (cursor.moveToNext()) {
+                        columns.add(cursor.getString(nameIndex));
+                    }
+                } catch (Throwable e) {
+                    throw new DbException(e);
+                } finally {
+                    IOUtil.closeQuietly(cursor);
+                }
+            }
+            tableColumns.put(tableName, columns);
+        }
+        return columns.contains(columnName);
+    }
+
+    public synchronized void onTableCreated(String tableName) {
+        if (!loaded) return;
+        tables.add(tableName);
+        tableColumns.remove(tableName); // 列在用到时再载入
+    }
+
+    public synchronized void onTableDropped(String tableName) {
+        if (!loaded) return;
+        tables.remove(tableName);
+        tableIndexes.remove(tableName);
+        tableColumns.remove(tableName);
+    }
+
+    public synchronized void onIndexCreated(String tableName, String indexName) {
+        if (!loaded) return;
+        getIndexSet(tableName).add(indexName);
+    }
+
+    public synchronized void onColumnAdded(String tableName, String columnName) {
+        if (!loaded) return;
+        HashSet<String> columns = tableColumns.get(tableName);
+        if (columns != null) {
+            columns.add(columnName);
+        }
+    }
+
+    private HashSet<String> getIndexSet(String tableName) {
+        HashSet<String> indexes = tableIndexes.get(tableName);
+        if (indexes == null) {
+            indexes = new HashSet<String>();
+            tableIndexes.put(tableName, indexes);
+        }
+        return indexes;
+    }
+}
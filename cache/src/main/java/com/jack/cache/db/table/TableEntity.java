@@ -19,10 +19,18 @@ import android.database.Cursor;
 
 import com.jack.cache.DbManager;
 import com.jack.cache.annotation.Table;
+import com.jack.cache.data.KeyValue;
+import com.jack.cache.db.converter.ColumnConverterFactory;
+import com.jack.cache.db.sqlite.SqlInfo;
+import com.jack.cache.db.sqlite.StatementCache;
 import com.jack.cache.exception.DbException;
+import com.jack.cache.file.LruCache;
 import com.jack.executor.utils.IOUtil;
+import com.jack.executor.utils.LogUtil;
 
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 
 
@@ -34,13 +42,33 @@ public final class TableEntity<T> {
     private ColumnEntity id;
     private Class<T> entityType;
     private Constructor<T> constructor;
+    private EntityAdapter<T> adapter;
     private volatile boolean checkedDatabase;
+    private volatile boolean indexCreated;
+    private StatementCache statementCache;
+    private volatile ColumnEntity[] insertColumns;
+    /**
+     * 默认查询的列, 有延迟加载的列时为其余列, 否则为"*"
+     */
+    private final String selectColumns;
+
+    /**
+     * 按id缓存的实体, DaoConfig#setEntityCacheSize大于0时启用.
+     * 写操作后version加一, 查询开始后version变化的结果不放入缓存.
+     */
+    private final LruCache<Object, T> entityCache;
+    private long entityCacheVersion;
 
     /**
      * key: columnName
      */
     private final LinkedHashMap<String, ColumnEntity> columnMap;
 
+    /**
+     * key: 关联字段名
+     */
+    private final LinkedHashMap<String, RelationEntity> relationMap;
+
     public TableEntity(DbManager db, Class<T> entityType) throws Throwable {
         this.db = db;
         this.entityType = entityType;
@@ -51,24 +79,81 @@ public final class TableEntity<T> {
         this.onCreated = table.onCreated();
         this.columnMap = TableUtils.findColumnMap(entityType);
 
+        int index = 0;
         for (ColumnEntity column : columnMap.values()) {
-            if (column.isId()) {
+            column.setIndex(index++);
+            if (column.isId() && this.id == null) {
                 this.id = column;
-                break;
+            }
+        }
+
+        this.relationMap = TableUtils.findRelationMap(this, entityType);
+        this.selectColumns = buildSelectColumns(columnMap);
+
+        int entityCacheSize = db.getDaoConfig().getEntityCacheSize();
+        this.entityCache = entityCacheSize > 0 ? new LruCache<Object, T>(entityCacheSize) : null;
+
+        this.adapter = findAdapter(entityType);
+        if (this.adapter != null) {
+            String[] columnNames = this.adapter.getColumnNames();
+            for (int slot = 0; slot < columnNames.length; slot++) {
+                ColumnEntity column = columnMap.get(columnNames[slot]);
+                // 内置类型的converter被替换时, 生成的代码仍按内置方式读写, 该列使用反射和converter
+                if (column != null && !ColumnConverterFactory.isBuiltInReplaced(
+                        column.getColumnField().getType(), column.getColumnConverter())) {
+                    column.setAdapter(this.adapter, slot);
+                }
             }
         }
     }
 
     public T createEntity() throws Throwable {
+        if (adapter != null) {
+            return adapter.newInstance();
+        }
         return this.constructor.newInstance();
     }
 
+    /**
+     * @return 编译期生成的访问器, 没有时返回null(使用反射).
+     */
+    public EntityAdapter<T> getAdapter() {
+        return adapter;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> EntityAdapter<T> findAdapter(Class<T> entityType) {
+        String entityName = entityType.getName();
+        int dot = entityName.lastIndexOf('.');
+        String adapterName = entityName.substring(0, dot + 1)
+                + entityName.substring(dot + 1).replace('$', '_') + EntityAdapter.SUFFIX;
+        try {
+            Class<?> adapterType = Class.forName(adapterName, true, entityType.getClassLoader());
+            return (EntityAdapter<T>) adapterType.newInstance();
+        } catch (ClassNotFoundException ignored) {
+            return null;
+        } catch (Throwable ex) {
+            LogUtil.e(ex.getMessage(), ex);
+            return null;
+        }
+    }
+
     public boolean tableIsExist() throws DbException {
         if (this.isCheckedDatabase()) {
             return true;
         }
 
-        Cursor cursor = db.execQuery("SELECT COUNT(*) AS c FROM sqlite_master WHERE type='table' AND name='" + name + "'");
+        if (db instanceof DbBase) {
+            boolean exist = ((DbBase) db).getSchema().hasTable(name);
+            if (exist) {
+                this.setCheckedDatabase(true);
+            }
+            return exist;
+        }
+
+        SqlInfo sqlInfo = new SqlInfo("SELECT COUNT(*) AS c FROM sqlite_master WHERE type='table' AND name=?");
+        sqlInfo.addBindArg(new KeyValue("name", name));
+        Cursor cursor = db.execQuery(sqlInfo);
         if (cursor != null) {
             try {
                 if (cursor.moveToNext()) {
@@ -112,6 +197,196 @@ public final class TableEntity<T> {
         return columnMap;
     }
 
+    /**
+     * @param name 关联字段名(@OneToMany, @ForeignKey)
+     */
+    public RelationEntity getRelation(String name) throws DbException {
+        RelationEntity relation = relationMap.get(name);
+        if (relation == null) {
+            throw new DbException("relation not found: " + entityType.getName() + "#" + name);
+        }
+        return relation;
+    }
+
+    /**
+     * @return 默认查询的列, 不包含延迟加载的列
+     */
+    public String getSelectColumns() {
+        return selectColumns;
+    }
+
+    private static String buildSelectColumns(LinkedHashMap<String, ColumnEntity> columnMap) {
+        boolean hasLazyColumn = false;
+        StringBuilder builder = new StringBuilder();
+        for (ColumnEntity column : columnMap.values()) {
+            if (column.isLazy()) {
+                hasLazyColumn = true;
+            } else {
+                builder.append("\"").append(column.getName()).append("\"").append(',');
+            }
+        }
+        if (!hasLazyColumn || builder.length() == 0) {
+            return "*";
+        }
+        builder.deleteCharAt(builder.length() - 1);
+        return builder.toString();
+    }
+
+    /**
+     * 除自增id外的所有列, 顺序同insert/replace语句中的列.
+     */
+    public ColumnEntity[] getInsertColumns() {
+        ColumnEntity[] result = insertColumns;
+        if (result == null) {
+            ArrayList<ColumnEntity> columnList = new ArrayList<ColumnEntity>(columnMap.size());
+            for (ColumnEntity column : columnMap.values()) {
+                if (!column.isAutoId()) {
+                    columnList.add(column);
+                }
+            }
+            result = columnList.toArray(new ColumnEntity[columnList.size()]);
+            insertColumns = result;
+        }
+        return result;
+    }
+
+    /**
+     * 该表insert/replace/update/delete语句的预编译缓存
+     */
+    public synchronized StatementCache getStatementCache() {
+        if (statementCache == null) {
+            statementCache = new StatementCache(db.getDatabase(), db.getDaoConfig().getStatementCacheSize());
+        }
+        return statementCache;
+    }
+
+    /*package*/ synchronized void releaseStatements() {
+        if (statementCache != null) {
+            statementCache.clear();
+            statementCache = null;
+        }
+    }
+
+    //******************************************* change tracking *******************************************
+
+    /**
+     * 记录实体当前各列的值, 只对TrackedEntity有效.
+     */
+    public void takeSnapshot(Object entity) {
+        if (!(entity instanceof TrackedEntity)) return;
+        Object[] snapshot = new Object[columnMap.size()];
+        for (ColumnEntity column : columnMap.values()) {
+            snapshot[column.getIndex()] = column.getTrackedValue(entity);
+        }
+        ((TrackedEntity) entity).setSnapshot(snapshot);
+    }
+
+    /**
+     * 只更新快照中的这些列(如按列update或读取延迟加载的列后), 没有快照时不处理.
+     *
+     * @param columns 可以包含null
+     */
+    public void refreshSnapshot(Object entity, ColumnEntity[] columns) {
+        if (!(entity instanceof TrackedEntity)) return;
+        Object[] snapshot = ((TrackedEntity) entity).getSnapshot();
+        if (snapshot == null) return;
+        for (ColumnEntity column : columns) {
+            if (column != null) {
+                snapshot[column.getIndex()] = column.getTrackedValue(entity);
+            }
+        }
+    }
+
+    /**
+     * @return 快照之后修改过的列(不含id), 没有修改时为空数组; 不是TrackedEntity或没有快照时返回null.
+     */
+    public ColumnEntity[] getChangedColumns(Object entity) {
+        if (!(entity instanceof TrackedEntity)) return null;
+        Object[] snapshot = ((TrackedEntity) entity).getSnapshot();
+        if (snapshot == null) return null;
+
+        ArrayList<ColumnEntity> changed = null;
+        for (ColumnEntity column : columnMap.values()) {
+            if (column.isId()) continue;
+            Object value = column.getTrackedValue(entity);
+            Object old = snapshot[column.getIndex()];
+            boolean same = value == null ? old == null
+                    : (value instanceof byte[] && old instanceof byte[]
+                    ? Arrays.equals((byte[]) value, (byte[]) old) : value.equals(old));
+            if (!same) {
+                if (changed == null) {
+                    changed = new ArrayList<ColumnEntity>();
+                }
+                changed.add(column);
+            }
+        }
+        return changed == null ? new ColumnEntity[0] : changed.toArray(new ColumnEntity[changed.size()]);
+    }
+
+    //******************************************* entity cache *******************************************
+
+    public boolean isEntityCacheEnabled() {
+        return entityCache != null;
+    }
+
+    /**
+     * @return 缓存的实体, 未启用或未命中时返回null
+     */
+    public T getCachedEntity(Object idValue) {
+        if (entityCache == null || idValue == null) return null;
+        return entityCache.get(entityCacheKey(idValue));
+    }
+
+    /**
+     * 查询前获取, 用于{@link #putCachedEntity(Object, Object, long)}
+     */
+    public synchronized long getEntityCacheVersion() {
+        return entityCacheVersion;
+    }
+
+    /**
+     * @param version 查询前的{@link #getEntityCacheVersion()}, 期间有写操作时不缓存
+     */
+    public synchronized void putCachedEntity(Object idValue, T entity, long version) {
+        if (entityCache == null || idValue == null || entity == null) return;
+        if (version == entityCacheVersion) {
+            entityCache.put(entityCacheKey(idValue), entity);
+        }
+    }
+
+    public synchronized void invalidateEntity(Object idValue) {
+        if (entityCache == null) return;
+        entityCacheVersion++;
+        if (idValue != null) {
+            entityCache.remove(entityCacheKey(idValue));
+        }
+    }
+
+    public synchronized void invalidateEntityCache() {
+        if (entityCache == null) return;
+        entityCacheVersion++;
+        entityCache.evictAll();
+    }
+
+    public int getEntityCacheHitCount() {
+        return entityCache == null ? 0 : entityCache.hitCount();
+    }
+
+    public int getEntityCacheMissCount() {
+        return entityCache == null ? 0 : entityCache.missCount();
+    }
+
+    /**
+     * 统一为数据库值, 整数统一为Long, 使findById(1)和findById(1L)命中同一个缓存
+     */
+    /* package */ static Object entityCacheKey(Object idValue) {
+        Object key = ColumnUtils.convert2DbValueIfNeeded(idValue);
+        if (key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            key = ((Number) key).longValue();
+        }
+        return key;
+    }
+
     /*package*/ boolean isCheckedDatabase() {
         return checkedDatabase;
     }
@@ -120,6 +395,14 @@ public final class TableEntity<T> {
         this.checkedDatabase = checkedDatabase;
     }
 
+    /*package*/ boolean isIndexCreated() {
+        return indexCreated;
+    }
+
+    /*package*/ void setIndexCreated(boolean indexCreated) {
+        this.indexCreated = indexCreated;
+    }
+
     @Override
     public String toString() {
         return name;
@@ -16,6 +16,8 @@
 package com.jack.cache.db.table;
 
 import com.jack.cache.annotation.Column;
+import com.jack.cache.annotation.ForeignKey;
+import com.jack.cache.annotation.OneToMany;
 import com.jack.cache.db.converter.ColumnConverterFactory;
 import com.jack.executor.utils.LogUtil;
 
@@ -36,6 +38,40 @@ public final class TableUtils {
         return columnMap;
     }
 
+    /* package */
+    static LinkedHashMap<String, RelationEntity> findRelationMap(TableEntity<?> table, Class<?> entityType) {
+        LinkedHashMap<String, RelationEntity> relationMap = new LinkedHashMap<String, RelationEntity>();
+        addRelations2Map(table, entityType, relationMap);
+        return relationMap;
+    }
+
+    private static void addRelations2Map(TableEntity<?> table, Class<?> entityType, HashMap<String, RelationEntity> relationMap) {
+        if (Object.class.equals(entityType)) return;
+
+        try {
+            Field[] fields = entityType.getDeclaredFields();
+            for (Field field : fields) {
+                int modify = field.getModifiers();
+                if (Modifier.isStatic(modify) || relationMap.containsKey(field.getName())) {
+                    continue;
+                }
+                OneToMany oneToMany = field.getAnnotation(OneToMany.class);
+                if (oneToMany != null) {
+                    relationMap.put(field.getName(), new RelationEntity(table, field, oneToMany));
+                    continue;
+                }
+                ForeignKey foreignKey = field.getAnnotation(ForeignKey.class);
+                if (foreignKey != null) {
+                    relationMap.put(field.getName(), new RelationEntity(table, field, foreignKey));
+                }
+            }
+
+            addRelations2Map(table, entityType.getSuperclass(), relationMap);
+        } catch (Throwable e) {
+            LogUtil.e(e.getMessage(), e);
+        }
+    }
+
     private static void addColumns2Map(Class<?> entityType, HashMap<String, ColumnEntity> columnMap) {
         if (Object.class.equals(entityType)) return;
 
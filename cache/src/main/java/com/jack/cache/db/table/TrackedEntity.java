@@ -0,0 +1,31 @@
+package com.jack.cache.db.table;
+
+/**
+ * 继承此类的实体启用修改跟踪: 查询或写入后记录各列的值,
+ * update(entity)不指定列时只写入之后修改过的列, 没有修改时不执行.
+ * <p>
+ * 未经过查询或写入的实体(如自行new并设置id), 以及iterate/forEach复用的实体, 仍写入所有列.
+ * 快照在写入语句执行后更新, 外层事务回滚时需要调用{@link #clearSnapshot()}.
+ */
+public abstract class TrackedEntity {
+
+    /**
+     * 各列的数据库值, 下标为ColumnEntity#getIndex(); null表示没有快照
+     */
+    private transient Object[] snapshot;
+
+    /* package */ Object[] getSnapshot() {
+        return snapshot;
+    }
+
+    /* package */ void setSnapshot(Object[] snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * 丢弃快照, 下次update(entity)写入所有列
+     */
+    public void clearSnapshot() {
+        this.snapshot = null;
+    }
+}
@@ -6,7 +6,9 @@ import android.text.TextUtils;
 import com.jack.cache.DbManager;
 import com.jack.cache.db.DbManagerImpl;
 import com.jack.cache.db.config.DbConfigs;
+import com.jack.cache.db.selector.RowVisitor;
 import com.jack.cache.db.sqlite.WhereBuilder;
+import com.jack.cache.db.table.LazyColumn;
 import com.jack.cache.exception.DbException;
 import com.jack.cache.exception.FileLockedException;
 import com.jack.cache.file.entity.DiskCacheEntity;
@@ -17,6 +19,7 @@ import com.jack.executor.utils.LogUtil;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -91,21 +94,17 @@ public final class LruDiskCache {
             if (result.getExpires() < System.currentTimeMillis()) {
                 return null;
             }
-
-            { // update hint & lastAccess...
-                final DiskCacheEntity finalResult = result;
-                cacheDb.startAsyncAction(new Runnable() {
-                    @Override
-                    public void run() {
-                        finalResult.setHits(finalResult.getHits() + 1);
-                        finalResult.setLastAccess(System.currentTimeMillis());
-                        try {
-                            cacheDb.update(finalResult, "hits", "lastAccess");
-                        } catch (Throwable ex) {
-                            LogUtil.e(ex.getMessage(), ex);
-                        }
-                    }
-                });
+            // textContent在loader需要时才读取
+            result.setLazyTextContent(new LazyColumn(cacheDb, result, "textContent"));
+
+            { // update hint & lastAccess, 批量提交
+                result.setHits(result.getHits() + 1);
+                result.setLastAccess(System.currentTimeMillis());
+                try {
+                    cacheDb.updateAsync(result, "hits", "lastAccess");
+                } catch (Throwable ex) {
+                    LogUtil.e(ex.getMessage(), ex);
+                }
             }
 
         }
@@ -261,23 +260,27 @@ public final class LruDiskCache {
                     try {
                         int count = (int) cacheDb.selector(DiskCacheEntity.class).count();
                         if (count > LIMIT_COUNT + 10) {
-                            List<DiskCacheEntity> rmList = cacheDb.selector(DiskCacheEntity.class)
+                            // 逐行读取, 只保留待删除的id
+                            final List<Long> rmIdList = new ArrayList<Long>();
+                            cacheDb.selector(DiskCacheEntity.class).project("path")
                                     .orderBy("lastAccess").orderBy("hits")
-                                    .limit(count - LIMIT_COUNT).offset(0).findAll();
-                            if (rmList != null && rmList.size() > 0) {
-                                // delete cache files
-                                for (DiskCacheEntity entity : rmList) {
-                                    String path = entity.getPath();
-                                    if (!TextUtils.isEmpty(path)) {
-                                        if (deleteFileWithLock(path)
-                                                && deleteFileWithLock(path + TEMP_FILE_SUFFIX)) {
-                                            // delete db entity
-                                            cacheDb.delete(entity);
+                                    .limit(count - LIMIT_COUNT).offset(0)
+                                    .forEach(new RowVisitor<DiskCacheEntity>() {
+                                        @Override
+                                        public boolean visit(DiskCacheEntity entity) {
+                                            // delete cache files
+                                            String path = entity.getPath();
+                                            if (!TextUtils.isEmpty(path)) {
+                                                if (deleteFileWithLock(path)
+                                                        && deleteFileWithLock(path + TEMP_FILE_SUFFIX)) {
+                                                    rmIdList.add(entity.getId());
+                                                }
+                                            }
+                                            return true;
                                         }
-                                    }
-                                }
-
-                            }
+                                    }, new DiskCacheEntity());
+                            // delete db entities
+                            deleteByIds(rmIdList);
                         }
                     } catch (DbException ex) {
                         LogUtil.e(ex.getMessage(), ex);
@@ -286,7 +289,7 @@ public final class LruDiskCache {
                     // trim disk
                     try {
                         while (FileUtil.getFileOrDirSize(cacheDir) > diskCacheSize) {
-                            List<DiskCacheEntity> rmList = cacheDb.selector(DiskCacheEntity.class)
+                            List<DiskCacheEntity> rmList = cacheDb.selector(DiskCacheEntity.class).project("path")
                                     .orderBy("lastAccess").orderBy("hits").limit(10).offset(0).findAll();
                             if (rmList != null && rmList.size() > 0) {
                                 // delete cache files
@@ -313,23 +316,33 @@ public final class LruDiskCache {
     private void deleteExpiry() {
         try {
             WhereBuilder whereBuilder = WhereBuilder.b("expires", "<", System.currentTimeMillis());
-            List<DiskCacheEntity> rmList = cacheDb.selector(DiskCacheEntity.class).where(whereBuilder).findAll();
+            // delete cache files
+            cacheDb.selector(DiskCacheEntity.class).project("path").where(whereBuilder)
+                    .forEach(new RowVisitor<DiskCacheEntity>() {
+                        @Override
+                        public boolean visit(DiskCacheEntity entity) {
+                            String path = entity.getPath();
+                            if (!TextUtils.isEmpty(path)) {
+                                deleteFileWithLock(path);
+                            }
+                            return true;
+                        }
+                    }, new DiskCacheEntity());
             // delete db entities
             cacheDb.delete(DiskCacheEntity.class, whereBuilder);
-            if (rmList != null && rmList.size() > 0) {
-                // delete cache files
-                for (DiskCacheEntity entity : rmList) {
-                    String path = entity.getPath();
-                    if (!TextUtils.isEmpty(path)) {
-                        deleteFileWithLock(path);
-                    }
-                }
-            }
         } catch (Throwable ex) {
             LogUtil.e(ex.getMessage(), ex);
         }
     }
 
+    private void deleteByIds(List<Long> idList) throws DbException {
+        long[] ids = new long[idList.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = idList.get(i);
+        }
+        cacheDb.deleteByIds(DiskCacheEntity.class, ids);
+    }
+
     /**
      * 清理未被数据库索引的历史缓存文件
      */
@@ -343,9 +356,9 @@ public final class LruDiskCache {
                         if (fileList != null) {
                             for (File file : fileList) {
                                 try {
-                                    long count = cacheDb.selector(DiskCacheEntity.class)
-                                            .where("path", "=", file.getAbsolutePath()).count();
-                                    if (count < 1) {
+                                    boolean exists = cacheDb.selector(DiskCacheEntity.class)
+                                            .where("path", "=", file.getAbsolutePath()).exists();
+                                    if (!exists) {
                                         IOUtil.deleteFileOrDir(file);
                                     }
                                 } catch (Throwable ex) {
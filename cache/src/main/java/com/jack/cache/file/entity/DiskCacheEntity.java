@@ -1,7 +1,10 @@
 package com.jack.cache.file.entity;
 
 import com.jack.cache.annotation.Column;
+import com.jack.cache.annotation.Index;
 import com.jack.cache.annotation.Table;
+import com.jack.cache.db.table.LazyColumn;
+import com.jack.executor.utils.LogUtil;
 
 import java.util.Date;
 
@@ -10,6 +13,7 @@ import java.util.Date;
  * 磁盘缓存对象
  */
 @Table(name = "disk_cache")
+@Index(columns = {"lastAccess", "hits"}) // trim: orderBy("lastAccess").orderBy("hits")
 public final class DiskCacheEntity {
 
     @Column(name = "id", isId = true)
@@ -18,13 +22,20 @@ public final class DiskCacheEntity {
     @Column(name = "key", property = "UNIQUE")
     private String key;
 
+    @Index
     @Column(name = "path")
     private String path;
 
-    @Column(name = "textContent")
+    @Column(name = "textContent", lazy = true)
     private String textContent;
 
+    /**
+     * 查询时没有读取textContent, 第一次getTextContent()时读取
+     */
+    private transient LazyColumn lazyTextContent;
+
     // from "max-age" (since http 1.1)
+    @Index
     @Column(name = "expires")
     private long expires = Long.MAX_VALUE;
 
@@ -52,6 +63,10 @@ public final class DiskCacheEntity {
         this.id = id;
     }
 
+    public void setLazyTextContent(LazyColumn lazyTextContent) {
+        this.lazyTextContent = lazyTextContent;
+    }
+
     public String getKey() {
         return key;
     }
@@ -69,10 +84,20 @@ public final class DiskCacheEntity {
     }
 
     public String getTextContent() {
+        LazyColumn lazy = lazyTextContent;
+        if (lazy != null) {
+            lazyTextContent = null;
+            try {
+                lazy.load();
+            } catch (Throwable ex) {
+                LogUtil.e(ex.getMessage(), ex);
+            }
+        }
         return textContent;
     }
 
     public void setTextContent(String textContent) {
+        this.lazyTextContent = null;
         this.textContent = textContent;
     }
 
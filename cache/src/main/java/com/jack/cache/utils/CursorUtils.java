@@ -26,25 +26,81 @@ import java.util.HashMap;
 public final class CursorUtils {
 
     public static <T> T getEntity(TableEntity<T> table, final Cursor cursor) throws Throwable {
-        T entity = table.createEntity();
+        return getEntity(table, cursor, getColumnMapping(table, cursor));
+    }
+
+    /**
+     * 按cursor的列顺序解析对应的ColumnEntity, 同一个cursor的所有行只需解析一次.
+     *
+     * @return 下标为cursor的列下标, 没有对应列时为null.
+     */
+    public static ColumnEntity[] getColumnMapping(TableEntity<?> table, final Cursor cursor) {
         HashMap<String, ColumnEntity> columnMap = table.getColumnMap();
         int columnCount = cursor.getColumnCount();
+        ColumnEntity[] mapping = new ColumnEntity[columnCount];
         for (int i = 0; i < columnCount; i++) {
-            String columnName = cursor.getColumnName(i);
-            ColumnEntity column = columnMap.get(columnName);
+            mapping[i] = columnMap.get(cursor.getColumnName(i));
+        }
+        return mapping;
+    }
+
+    /**
+     * @param mapping {@link #getColumnMapping(TableEntity, Cursor)}的结果
+     */
+    public static <T> T getEntity(TableEntity<T> table, final Cursor cursor, ColumnEntity[] mapping) throws Throwable {
+        T entity = table.createEntity();
+        for (int i = 0; i < mapping.length; i++) {
+            ColumnEntity column = mapping[i];
             if (column != null) {
                 column.setValueFromCursor(entity, cursor, i);
             }
         }
+        table.takeSnapshot(entity);
         return entity;
     }
 
-    public static DbModel getDbModel(final Cursor cursor) {
-        DbModel result = new DbModel();
-        int columnCount = cursor.getColumnCount();
-        for (int i = 0; i < columnCount; i++) {
-            result.add(cursor.getColumnName(i), cursor.getString(i));
+    /**
+     * 读取当前行到已有的实体, 值为null的列恢复为默认值, 用于遍历时复用同一个实体.
+     * 实体已有快照(TrackedEntity)时更新读取的列.
+     */
+    public static <T> T fillEntity(TableEntity<T> table, T entity, final Cursor cursor, ColumnEntity[] mapping) {
+        fillEntity(entity, cursor, mapping);
+        table.refreshSnapshot(entity, mapping);
+        return entity;
+    }
+
+    /**
+     * 读取当前行到已有的实体, 值为null的列恢复为默认值, 用于遍历时复用同一个实体.
+     */
+    public static <T> T fillEntity(T entity, final Cursor cursor, ColumnEntity[] mapping) {
+        for (int i = 0; i < mapping.length; i++) {
+            ColumnEntity column = mapping[i];
+            if (column != null) {
+                if (cursor.isNull(i)) {
+                    column.resetValue(entity);
+                } else {
+                    column.setValueFromCursor(entity, cursor, i);
+                }
+            }
         }
-        return result;
+        return entity;
+    }
+
+    public static DbModel getDbModel(final Cursor cursor) {
+        return getDbModel(cursor, getDbModelColumns(cursor));
+    }
+
+    /**
+     * cursor的列名, 同一个cursor的所有行只需读取一次.
+     */
+    public static DbModel.Columns getDbModelColumns(final Cursor cursor) {
+        return new DbModel.Columns(cursor.getColumnNames());
+    }
+
+    /**
+     * @param columns {@link #getDbModelColumns(Cursor)}的结果
+     */
+    public static DbModel getDbModel(final Cursor cursor, DbModel.Columns columns) {
+        return new DbModel(columns, cursor);
     }
 }
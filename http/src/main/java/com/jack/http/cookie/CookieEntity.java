@@ -3,6 +3,7 @@ package com.jack.http.cookie;
 import android.text.TextUtils;
 
 import com.jack.cache.annotation.Column;
+import com.jack.cache.annotation.Index;
 import com.jack.cache.annotation.Table;
 
 import java.net.HttpCookie;
@@ -22,6 +23,7 @@ import java.net.URI;
     @Column(name = "id", isId = true)
     private long id;
 
+    @Index
     @Column(name = "uri")
     private String uri; // cookie add by this uri.
 
@@ -35,8 +37,10 @@ import java.net.URI;
     private String commentURL;
     @Column(name = "discard")
     private boolean discard;
+    @Index
     @Column(name = "domain")
     private String domain;
+    @Index
     @Column(name = "expiry")
     private long expiry = MAX_EXPIRY;
     @Column(name = "path")
@@ -5,6 +5,7 @@ import android.text.TextUtils;
 import com.jack.cache.DbManager;
 import com.jack.cache.db.DbManagerImpl;
 import com.jack.cache.db.config.DbConfigs;
+import com.jack.cache.db.selector.RowVisitor;
 import com.jack.cache.db.selector.Selector;
 import com.jack.cache.db.sqlite.WhereBuilder;
 import com.jack.cache.db.table.DbModel;
@@ -15,6 +16,7 @@ import java.net.HttpCookie;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * 基于数据库的CookieStore实现.
@@ -113,14 +115,7 @@ public enum DbCookieStore implements CookieStore {
 
             where.or("uri", "=", uri.toString());
 
-            List<CookieEntity> cookieEntityList = selector.where(where).findAll();
-            if (cookieEntityList != null) {
-                for (CookieEntity cookieEntity : cookieEntityList) {
-                    if (!cookieEntity.isExpired()) {
-                        rt.add(cookieEntity.toHttpCookie());
-                    }
-                }
-            }
+            selector.where(where).forEach(new CookieCollector(rt), new CookieEntity());
         } catch (Throwable ex) {
             LogUtil.e(ex.getMessage(), ex);
         }
@@ -135,14 +130,7 @@ public enum DbCookieStore implements CookieStore {
         List<HttpCookie> rt = new ArrayList<HttpCookie>();
 
         try {
-            List<CookieEntity> cookieEntityList = db.findAll(CookieEntity.class);
-            if (cookieEntityList != null) {
-                for (CookieEntity cookieEntity : cookieEntityList) {
-                    if (!cookieEntity.isExpired()) {
-                        rt.add(cookieEntity.toHttpCookie());
-                    }
-                }
-            }
+            db.selector(CookieEntity.class).forEach(new CookieCollector(rt), new CookieEntity());
         } catch (Throwable ex) {
             LogUtil.e(ex.getMessage(), ex);
         }
@@ -249,26 +237,15 @@ public enum DbCookieStore implements CookieStore {
                     lastTrimTime = current;
                 }
 
-                // delete expires
-                try {
-                    db.delete(CookieEntity.class, WhereBuilder
-                            .b("expiry", "<", System.currentTimeMillis())
-                            .and("expiry", "!=", -1L));
-                } catch (Throwable ex) {
-                    LogUtil.e(ex.getMessage(), ex);
-                }
-
-                // trim by limit count
                 try {
-                    int count = (int) db.selector(CookieEntity.class).count();
-                    if (count > LIMIT_COUNT + 10) {
-                        List<CookieEntity> rmList = db.selector(CookieEntity.class)
-                                .where("expiry", "!=", -1L).orderBy("expiry", false)
-                                .limit(count - LIMIT_COUNT).findAll();
-                        if (rmList != null) {
-                            db.delete(rmList);
+                    // 删除过期的和超出数量的cookie, 一次提交
+                    db.runInTransaction(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            trimSizeInTransaction();
+                            return null;
                         }
-                    }
+                    });
                 } catch (Throwable ex) {
                     LogUtil.e(ex.getMessage(), ex);
                 }
@@ -276,6 +253,51 @@ public enum DbCookieStore implements CookieStore {
         });
     }
 
+    private void trimSizeInTransaction() {
+        // delete expires
+        try {
+            db.delete(CookieEntity.class, WhereBuilder
+                    .b("expiry", "<", System.currentTimeMillis())
+                    .and("expiry", "!=", -1L));
+        } catch (Throwable ex) {
+            LogUtil.e(ex.getMessage(), ex);
+        }
+
+        // trim by limit count
+        try {
+            int count = (int) db.selector(CookieEntity.class).count();
+            if (count > LIMIT_COUNT + 10) {
+                List<CookieEntity> rmList = db.selector(CookieEntity.class)
+                        .where("expiry", "!=", -1L).orderBy("expiry", false)
+                        .limit(count - LIMIT_COUNT).findAll();
+                if (rmList != null) {
+                    db.delete(rmList);
+                }
+            }
+        } catch (Throwable ex) {
+            LogUtil.e(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * 收集未过期的cookie, 逐行读取, 复用同一个CookieEntity
+     */
+    private static final class CookieCollector implements RowVisitor<CookieEntity> {
+        private final List<HttpCookie> result;
+
+        CookieCollector(List<HttpCookie> result) {
+            this.result = result;
+        }
+
+        @Override
+        public boolean visit(CookieEntity cookieEntity) {
+            if (!cookieEntity.isExpired()) {
+                result.add(cookieEntity.toHttpCookie());
+            }
+            return true;
+        }
+    }
+
     private URI getEffectiveURI(final URI uri) {
         URI effectiveURI = null;
         try {
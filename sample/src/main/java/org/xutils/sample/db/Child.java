@@ -18,6 +18,7 @@ package org.xutils.sample.db;
 
 import com.jack.cache.DbManager;
 import com.jack.cache.annotation.Column;
+import com.jack.cache.annotation.ForeignKey;
 import com.jack.cache.annotation.Table;
 import com.jack.cache.exception.DbException;
 
@@ -41,12 +42,20 @@ public class Child {
     @Column(name = "parentId" /*, property = "UNIQUE"//如果是一对一加上唯一约束*/)
     private long parentId; // 外键表id
 
+    // 查询时用selector(Child.class).with("parent")批量读取
+    @ForeignKey(column = "parentId")
+    private Parent parent;
+
     // 这个属性被忽略，不存入数据库
     private String willIgnore;
 
     @Column(name = "text")
     private String text;
 
+    public Parent getParent() {
+        return parent;
+    }
+
     public Parent getParent(DbManager db) throws DbException {
         return db.findById(Parent.class, parentId);
     }
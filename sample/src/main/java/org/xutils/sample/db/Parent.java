@@ -2,6 +2,7 @@ package org.xutils.sample.db;
 
 import com.jack.cache.DbManager;
 import com.jack.cache.annotation.Column;
+import com.jack.cache.annotation.OneToMany;
 import com.jack.cache.annotation.Table;
 import com.jack.cache.exception.DbException;
 
@@ -34,6 +35,14 @@ public class Parent {
     @Column(name = "date")
     private java.sql.Date date;
 
+    // 查询时用selector(Parent.class).with("children")批量读取
+    @OneToMany(column = "parentId")
+    private List<Child> children;
+
+    public List<Child> getChildren() {
+        return children;
+    }
+
     public List<Child> getChildren(DbManager db) throws DbException {
         return db.selector(Child.class).where("parentId", "=", this.id).findAll();
     }
@@ -94,7 +94,7 @@ public class DownloadCallback implements
                 downloadInfo.setState(DownloadState.STARTED);
                 downloadInfo.setFileLength(total);
                 downloadInfo.setProgress((int) (current * 100 / total));
-                downloadManager.updateDownloadInfo(downloadInfo);
+                downloadManager.updateDownloadProgress(downloadInfo);
             } catch (DbException ex) {
                 LogUtil.e(ex.getMessage(), ex);
             }
@@ -2,6 +2,7 @@ package org.xutils.sample.download;
 
 import com.jack.cache.annotation.Column;
 import com.jack.cache.annotation.Table;
+import com.jack.cache.db.table.TrackedEntity;
 
 /**
  * Author: wyouflf
@@ -9,7 +10,7 @@ import com.jack.cache.annotation.Table;
  * Time: 下午8:11
  */
 @Table(name = "download", onCreated = "CREATE UNIQUE INDEX index_name ON download(label,fileSavePath)")
-public class DownloadInfo {
+public class DownloadInfo extends TrackedEntity { // update(info)只写入修改过的列
 
     public DownloadInfo() {
     }
@@ -69,6 +69,13 @@ public final class DownloadManager {
         db.update(info);
     }
 
+    /**
+     * 进度回调很频繁, 异步合并后批量提交
+     */
+    public void updateDownloadProgress(DownloadInfo info) throws DbException {
+        db.updateAsync(info, "state", "fileLength", "progress");
+    }
+
     public int getDownloadListCount() {
         return downloadInfoList.size();
     }
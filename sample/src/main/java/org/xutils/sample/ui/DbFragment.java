@@ -108,15 +108,18 @@ public class DbFragment extends BaseFragment {
             calendar.add(Calendar.DATE, -1);
             calendar.add(Calendar.HOUR, 3);
 
+            // with("children"): 所有parent的children只用一次IN(...)查询读取
             List<Parent> list = db.selector(Parent.class)
                     .where("id", "<", 54)
                     .and("time", ">", calendar.getTime())
                     .orderBy("id")
+                    .with("children")
                     .limit(10).findAll();
             temp += "find parent size:" + list.size() + "\n";
             tv_db_result.setText(temp);
             if (list.size() > 0) {
-                temp += "last parent:" + list.get(list.size() - 1) + "\n";
+                Parent last = list.get(list.size() - 1);
+                temp += "last parent:" + last + ", children size:" + last.getChildren().size() + "\n";
                 tv_db_result.setText(temp);
             }
 